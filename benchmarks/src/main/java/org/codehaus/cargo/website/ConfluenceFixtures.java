@@ -0,0 +1,295 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+/**
+ * Pages, blog posts and attachments served by the {@link ConfluenceStub}.<br>
+ * <br>
+ * These are recorded by running the generator with <code>-Dcargo.keepRawJson=true</code>, which
+ * leaves the list of pages and the JSON of each downloaded page and blog post in its
+ * <code>target/temp</code> directory. Without any recording, the fixtures are made from the
+ * generated pages instead, whose links are made to point to Atlassian Confluence again.
+ */
+public class ConfluenceFixtures
+{
+    /**
+     * Pattern for the links to other generated pages.
+     */
+    private static final Pattern PAGE_LINK =
+        Pattern.compile("href=\"([^\"#/:]+)\\.html(#[^\"]*)?\"");
+
+    /**
+     * Pattern for the links to and images of attachments of the generated pages.
+     */
+    private static final Pattern ATTACHMENT_LINK =
+        Pattern.compile("(href|src)=\"attachments/([^\"]+)\"");
+
+    /**
+     * Listed pages, with their bodies.
+     */
+    private final List<JSONObject> pages;
+
+    /**
+     * Blog posts, with their bodies.
+     */
+    private final List<JSONObject> blogposts;
+
+    /**
+     * Pages and blog posts, by identifier.
+     */
+    private final Map<String, JSONObject> content = new HashMap<String, JSONObject>();
+
+    /**
+     * Directory with the attachments.
+     */
+    private final File attachments;
+
+    /**
+     * Saves the attributes.
+     * @param pages Listed pages, with their bodies.
+     * @param blogposts Blog posts, with their bodies.
+     * @param unlisted Pages only found via links, with their bodies.
+     * @param attachments Directory with the attachments.
+     */
+    private ConfluenceFixtures(List<JSONObject> pages, List<JSONObject> blogposts,
+        List<JSONObject> unlisted, File attachments)
+    {
+        this.pages = Collections.unmodifiableList(pages);
+        this.blogposts = Collections.unmodifiableList(blogposts);
+        for (List<JSONObject> items : Arrays.asList(pages, blogposts, unlisted))
+        {
+            for (JSONObject item : items)
+            {
+                content.put(item.getString("id"), item);
+            }
+        }
+        this.attachments = attachments;
+    }
+
+    /**
+     * Load the pages and blog posts recorded by the generator. The recorded pages which are not in
+     * the list of pages have been found via links, and are not listed either.
+     * @param recorded Directory with the recorded pages, i.e. the <code>target/temp</code>
+     * directory of the generator.
+     * @param attachments Directory with the attachments.
+     * @return Fixtures, <code>null</code> if there is no recording.
+     * @throws IOException If reading the recording fails.
+     */
+    public static ConfluenceFixtures load(File recorded, File attachments) throws IOException
+    {
+        File pageList = new File(recorded, "pages.json");
+        File[] files = recorded.listFiles();
+        if (!pageList.isFile() || files == null)
+        {
+            return null;
+        }
+        Set<String> listed = new HashSet<String>();
+        JSONArray listedPages = new JSONArray(read(pageList));
+        for (int i = 0; i < listedPages.length(); i++)
+        {
+            listed.add(listedPages.getJSONObject(i).getString("id"));
+        }
+        Arrays.sort(files);
+        List<JSONObject> pages = new ArrayList<JSONObject>();
+        List<JSONObject> blogposts = new ArrayList<JSONObject>();
+        List<JSONObject> unlisted = new ArrayList<JSONObject>();
+        for (File file : files)
+        {
+            if (file.isFile() && file.getName().matches("\\d+"))
+            {
+                // Blog posts have no parent page
+                JSONObject item = new JSONObject(read(file));
+                if (listed.contains(item.getString("id")))
+                {
+                    pages.add(item);
+                }
+                else if (item.has("parentId"))
+                {
+                    unlisted.add(item);
+                }
+                else
+                {
+                    blogposts.add(item);
+                }
+            }
+        }
+        if (pages.isEmpty())
+        {
+            return null;
+        }
+        return new ConfluenceFixtures(pages, blogposts, unlisted, attachments);
+    }
+
+    /**
+     * Make pages from the generated pages, all at the top level of the page hierarchy.
+     * @param generated Directory with the generated pages.
+     * @return Fixtures.
+     * @throws IOException If reading the generated pages fails.
+     */
+    public static ConfluenceFixtures generate(File generated) throws IOException
+    {
+        File[] files = generated.listFiles();
+        if (files == null)
+        {
+            throw new IOException("Cannot list directory " + generated.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        File attachments = new File(generated, "attachments");
+        Map<String, String> ids = new LinkedHashMap<String, String>();
+        Map<String, String> sources = new HashMap<String, String>();
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (!file.isFile() || !name.endsWith(".html"))
+            {
+                continue;
+            }
+            Element source = Jsoup.parse(read(file))
+                .selectFirst("td.rightColumn");
+            if (source != null)
+            {
+                name = name.substring(0, name.length() - 5);
+                ids.put(name, Integer.toString(1000 + ids.size()));
+                sources.put(name, source.html());
+            }
+        }
+
+        List<JSONObject> pages = new ArrayList<JSONObject>();
+        for (Map.Entry<String, String> id : ids.entrySet())
+        {
+            Matcher link = PAGE_LINK.matcher(sources.get(id.getKey()));
+            StringBuffer body = new StringBuffer();
+            while (link.find())
+            {
+                String target = ids.get(link.group(1));
+                String replacement = link.group();
+                if (target != null)
+                {
+                    replacement = "href=\"/wiki/spaces/CARGO/pages/" + target + "/"
+                        + link.group(1) + (link.group(2) == null ? "" : link.group(2)) + "\"";
+                }
+                link.appendReplacement(body, Matcher.quoteReplacement(replacement));
+            }
+            link.appendTail(body);
+            link = ATTACHMENT_LINK.matcher(body.toString());
+            body = new StringBuffer();
+            while (link.find())
+            {
+                // Attachments missing from the generated pages stay missing
+                String replacement = link.group();
+                if (new File(attachments, URLDecoder.decode(link.group(2), "UTF-8")).isFile())
+                {
+                    replacement = link.group(1) + "=\"/wiki/download/attachments/"
+                        + id.getValue() + "/" + link.group(2) + "?api=v2\"";
+                }
+                link.appendReplacement(body, Matcher.quoteReplacement(replacement));
+            }
+            link.appendTail(body);
+
+            JSONObject page = new JSONObject();
+            page.put("id", id.getValue());
+            page.put("title", URLDecoder.decode(id.getKey(), "UTF-8"));
+            page.put("parentId", JSONObject.NULL);
+            page.put("status", "current");
+            page.put("version", new JSONObject().put("number", 1)
+                .put("createdAt", "2026-01-01T00:00:00.000Z"));
+            page.put("body", new JSONObject().put("view", new JSONObject()
+                .put("value", body.toString()).put("representation", "view")));
+            pages.add(page);
+        }
+        return new ConfluenceFixtures(
+            pages, new ArrayList<JSONObject>(), new ArrayList<JSONObject>(), attachments);
+    }
+
+    /**
+     * Read a file. The generator is not used for this, so that its settings can still be changed
+     * after loading the fixtures.
+     * @param file File.
+     * @return File content.
+     * @throws IOException If reading the file fails.
+     */
+    private static String read(File file) throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Listed pages, with their bodies.
+     */
+    public List<JSONObject> getPages()
+    {
+        return pages;
+    }
+
+    /**
+     * @return Blog posts, with their bodies.
+     */
+    public List<JSONObject> getBlogposts()
+    {
+        return blogposts;
+    }
+
+    /**
+     * Get a page or blog post.
+     * @param id Page or blog post identifier.
+     * @return Page or blog post with its body, <code>null</code> if there is none.
+     */
+    public JSONObject getContent(String id)
+    {
+        return content.get(id);
+    }
+
+    /**
+     * Get an attachment.
+     * @param filename Attachment file name.
+     * @return Attachment file, <code>null</code> if there is none.
+     */
+    public File getAttachment(String filename)
+    {
+        File attachment = new File(attachments, filename);
+        if (filename.contains("/") || filename.contains("\\") || !attachment.isFile())
+        {
+            return null;
+        }
+        return attachment;
+    }
+}
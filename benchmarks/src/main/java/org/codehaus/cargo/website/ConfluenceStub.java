@@ -0,0 +1,747 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Local stand-in of the Atlassian Confluence endpoints used by the generator, serving
+ * {@link ConfluenceFixtures}: the listing of the pages and blog posts of a space, each page and
+ * blog post, and the attachments.<br>
+ * <br>
+ * Each request can be delayed (latency), and all responses share a bandwidth; requests can also
+ * randomly fail with HTTP 401 (only when authenticated, as Atlassian Confluence does with an
+ * expired API key, the space being readable anonymously), 429 (throttled, with a
+ * <code>Retry-After</code>) or 503 errors. The failures are drawn from a seeded random generator,
+ * so that a run with the same settings and concurrency sees about the same failures. Some pages
+ * can also be left out of the listing, so that the generator only finds these via links.
+ */
+public class ConfluenceStub
+{
+    /**
+     * Size of the chunks the responses are written by, each waiting for its share of bandwidth.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Pattern for the listing of the pages or blog posts of a space.
+     */
+    private static final Pattern LISTING =
+        Pattern.compile("/wiki/api/v2/spaces/[^/]+/(pages|blogposts)");
+
+    /**
+     * Pattern for a page or blog post.
+     */
+    private static final Pattern CONTENT = Pattern.compile("/wiki/api/v2/(pages|blogposts)/(\\d+)");
+
+    /**
+     * Pattern for an attachment.
+     */
+    private static final Pattern ATTACHMENT =
+        Pattern.compile("/wiki/download/attachments/\\d+/([^/]+)");
+
+    /**
+     * Pattern for the <code>Range</code> header of a request for the rest of a file.
+     */
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+
+    /**
+     * Body formats of the page and blog post listings.
+     */
+    private static final Set<String> LISTING_BODY_FORMATS =
+        new HashSet<String>(Arrays.asList("storage", "atlas_doc_format"));
+
+    /**
+     * Builder for a {@link ConfluenceStub}.
+     */
+    public static class Builder
+    {
+        /**
+         * Served pages, blog posts and attachments.
+         */
+        private ConfluenceFixtures fixtures;
+
+        /**
+         * Port to serve on, <code>0</code> for any free port.
+         */
+        private int port = 0;
+
+        /**
+         * Delay before answering each request, in milliseconds.
+         */
+        private long latency = 0;
+
+        /**
+         * Bandwidth shared by all responses, in bytes per second, <code>0</code> for unlimited.
+         */
+        private long bandwidth = 0;
+
+        /**
+         * Rate of authenticated requests failing with HTTP 401.
+         */
+        private double unauthorized = 0;
+
+        /**
+         * Rate of requests failing with HTTP 429.
+         */
+        private double throttled = 0;
+
+        /**
+         * <code>Retry-After</code> of the throttled requests, in seconds.
+         */
+        private long retryAfter = 1;
+
+        /**
+         * Rate of requests failing with HTTP 503.
+         */
+        private double serverErrors = 0;
+
+        /**
+         * Rate of pages left out of the listing.
+         */
+        private double hiddenPages = 0;
+
+        /**
+         * Maximum number of pages or blog posts per listing response.
+         */
+        private int pageSize = 250;
+
+        /**
+         * Seed of the random failures.
+         */
+        private long seed = 0;
+
+        /**
+         * @param fixtures Served pages, blog posts and attachments.
+         * @return This builder.
+         */
+        public Builder fixtures(ConfluenceFixtures fixtures)
+        {
+            this.fixtures = fixtures;
+            return this;
+        }
+
+        /**
+         * @param port Port to serve on, <code>0</code> for any free port.
+         * @return This builder.
+         */
+        public Builder port(int port)
+        {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param latency Delay before answering each request, in milliseconds.
+         * @return This builder.
+         */
+        public Builder latency(long latency)
+        {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * @param bandwidth Bandwidth shared by all responses, in bytes per second, <code>0</code>
+         * for unlimited.
+         * @return This builder.
+         */
+        public Builder bandwidth(long bandwidth)
+        {
+            this.bandwidth = bandwidth;
+            return this;
+        }
+
+        /**
+         * @param unauthorized Rate of authenticated requests failing with HTTP 401.
+         * @return This builder.
+         */
+        public Builder unauthorized(double unauthorized)
+        {
+            this.unauthorized = unauthorized;
+            return this;
+        }
+
+        /**
+         * @param throttled Rate of requests failing with HTTP 429.
+         * @param retryAfter <code>Retry-After</code> of the throttled requests, in seconds.
+         * @return This builder.
+         */
+        public Builder throttled(double throttled, long retryAfter)
+        {
+            this.throttled = throttled;
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        /**
+         * @param serverErrors Rate of requests failing with HTTP 503.
+         * @return This builder.
+         */
+        public Builder serverErrors(double serverErrors)
+        {
+            this.serverErrors = serverErrors;
+            return this;
+        }
+
+        /**
+         * @param hiddenPages Rate of pages left out of the listing.
+         * @return This builder.
+         */
+        public Builder hiddenPages(double hiddenPages)
+        {
+            this.hiddenPages = hiddenPages;
+            return this;
+        }
+
+        /**
+         * @param pageSize Maximum number of pages or blog posts per listing response.
+         * @return This builder.
+         */
+        public Builder pageSize(int pageSize)
+        {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param seed Seed of the random failures.
+         * @return This builder.
+         */
+        public Builder seed(long seed)
+        {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @return Stub, not started yet.
+         */
+        public ConfluenceStub build()
+        {
+            if (fixtures == null)
+            {
+                throw new IllegalStateException("No fixtures");
+            }
+            return new ConfluenceStub(this);
+        }
+    }
+
+    /**
+     * Served pages, blog posts and attachments.
+     */
+    private final ConfluenceFixtures fixtures;
+
+    /**
+     * Port to serve on, <code>0</code> for any free port.
+     */
+    private final int port;
+
+    /**
+     * Listed pages and blog posts, without their bodies, by type.
+     */
+    private final Map<String, List<JSONObject>> listings = new HashMap<String, List<JSONObject>>();
+
+    /**
+     * Delay before answering each request, in milliseconds.
+     */
+    private final long latency;
+
+    /**
+     * Bandwidth shared by all responses, in bytes per second, <code>0</code> for unlimited.
+     */
+    private final long bandwidth;
+
+    /**
+     * Rate of authenticated requests failing with HTTP 401.
+     */
+    private final double unauthorized;
+
+    /**
+     * Rate of requests failing with HTTP 429.
+     */
+    private final double throttled;
+
+    /**
+     * <code>Retry-After</code> of the throttled requests, in seconds.
+     */
+    private final long retryAfter;
+
+    /**
+     * Rate of requests failing with HTTP 503.
+     */
+    private final double serverErrors;
+
+    /**
+     * Maximum number of pages or blog posts per listing response.
+     */
+    private final int pageSize;
+
+    /**
+     * Generator of the random failures.
+     */
+    private final Random random;
+
+    /**
+     * Time when the bandwidth is available again, in nanoseconds.
+     */
+    private long bandwidthAvailable = System.nanoTime();
+
+    /**
+     * Number of requests.
+     */
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Number of sent bytes.
+     */
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * Number of responses, by HTTP status code.
+     */
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<Integer, LongAdder>();
+
+    /**
+     * HTTP server, <code>null</code> if not started.
+     */
+    private HttpServer server;
+
+    /**
+     * Executor of the HTTP server.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Saves the settings and prepares the listings.
+     * @param builder Builder.
+     */
+    private ConfluenceStub(Builder builder)
+    {
+        this.fixtures = builder.fixtures;
+        this.port = builder.port;
+        this.latency = builder.latency;
+        this.bandwidth = builder.bandwidth;
+        this.unauthorized = builder.unauthorized;
+        this.throttled = builder.throttled;
+        this.retryAfter = builder.retryAfter;
+        this.serverErrors = builder.serverErrors;
+        this.pageSize = builder.pageSize;
+        this.random = new Random(builder.seed);
+        List<JSONObject> pages = new ArrayList<JSONObject>();
+        for (int i = 0; i < fixtures.getPages().size(); i++)
+        {
+            // Spread the hidden pages evenly
+            if (Math.floor((i + 1) * builder.hiddenPages) == Math.floor(i * builder.hiddenPages))
+            {
+                pages.add(fixtures.getPages().get(i));
+            }
+        }
+        listings.put("pages", pages);
+        listings.put("blogposts", fixtures.getBlogposts());
+    }
+
+    /**
+     * @return Builder for a new stub.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Start serving, on the loopback interface.
+     * @throws IOException If the server cannot start.
+     */
+    public void start() throws IOException
+    {
+        server =
+            HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    serve(exchange);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Stop serving.
+     */
+    public void stop()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return URL of the stub, to use as <code>cargo.confluenceUrl</code>.
+     */
+    public String getUrl()
+    {
+        return "http://" + server.getAddress().getHostString() + ":"
+            + server.getAddress().getPort();
+    }
+
+    /**
+     * @return Number of requests so far.
+     */
+    public long getRequests()
+    {
+        return requests.sum();
+    }
+
+    /**
+     * @return Number of sent bytes so far.
+     */
+    public long getBytes()
+    {
+        return bytes.sum();
+    }
+
+    /**
+     * @return Number of responses so far, by HTTP status code.
+     */
+    public SortedMap<Integer, Long> getStatuses()
+    {
+        SortedMap<Integer, Long> result = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, LongAdder> status : statuses.entrySet())
+        {
+            result.put(status.getKey(), status.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * Serve a request.
+     * @param exchange HTTP exchange.
+     * @throws IOException If sending the response fails.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void serve(HttpExchange exchange) throws IOException, InterruptedException
+    {
+        requests.increment();
+        if (latency > 0)
+        {
+            Thread.sleep(latency);
+        }
+        double failure;
+        synchronized (random)
+        {
+            failure = random.nextDouble();
+        }
+        if (failure < unauthorized)
+        {
+            if (exchange.getRequestHeaders().containsKey("Authorization"))
+            {
+                send(exchange, 401, "{}");
+                return;
+            }
+        }
+        else if (failure < unauthorized + throttled)
+        {
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfter));
+            send(exchange, 429, "{}");
+            return;
+        }
+        else if (failure < unauthorized + throttled + serverErrors)
+        {
+            send(exchange, 503, "{}");
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        Matcher matcher = LISTING.matcher(path);
+        if (matcher.matches())
+        {
+            list(exchange, matcher.group(1), query);
+            return;
+        }
+        matcher = CONTENT.matcher(path);
+        if (matcher.matches())
+        {
+            JSONObject content = fixtures.getContent(matcher.group(2));
+            if (content == null)
+            {
+                send(exchange, 404, "{}");
+            }
+            else if ("view".equals(query.get("body-format")))
+            {
+                send(exchange, 200, content.toString());
+            }
+            else
+            {
+                // As in Atlassian Confluence, there is no body unless a body format is asked for
+                JSONObject metadata = new JSONObject(content.toString());
+                metadata.put("body", new JSONObject());
+                send(exchange, 200, metadata.toString());
+            }
+            return;
+        }
+        matcher = ATTACHMENT.matcher(path);
+        if (matcher.matches())
+        {
+            File attachment = fixtures.getAttachment(matcher.group(1));
+            if (attachment == null)
+            {
+                send(exchange, 404, "{}");
+            }
+            else
+            {
+                sendAttachment(exchange, attachment);
+            }
+            return;
+        }
+        send(exchange, 404, "{}");
+    }
+
+    /**
+     * Send a listing response, with the <code>next</code> link to the following one, if any. As on
+     * Atlassian Confluence, the listings reject the <code>view</code> body format: they only have
+     * the <code>storage</code> and <code>atlas_doc_format</code> ones, which the fixtures do not
+     * have, so these are accepted but the results then have no body.
+     * @param exchange HTTP exchange.
+     * @param type <code>pages</code> or <code>blogposts</code>.
+     * @param query Request parameters.
+     * @throws IOException If sending the response fails.
+     * @throws InterruptedException If interrupted while waiting for bandwidth.
+     */
+    private void list(HttpExchange exchange, String type, Map<String, String> query)
+        throws IOException, InterruptedException
+    {
+        List<JSONObject> items = listings.get(type);
+        int start = query.containsKey("cursor") ? Integer.parseInt(query.get("cursor")) : 0;
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 25;
+        limit = Math.min(limit, pageSize);
+        String bodyFormat = query.get("body-format");
+        if (bodyFormat != null && !LISTING_BODY_FORMATS.contains(bodyFormat))
+        {
+            send(exchange, 400, new JSONObject().put("errors", new JSONArray().put(
+                new JSONObject().put("status", 400).put("code", "INVALID_REQUEST_PARAMETER")
+                    .put("title", "Invalid body-format: " + bodyFormat))).toString());
+            return;
+        }
+        JSONArray results = new JSONArray();
+        for (JSONObject item : items.subList(start, Math.min(items.size(), start + limit)))
+        {
+            JSONObject result = new JSONObject(item, JSONObject.getNames(item));
+            result.remove("body");
+            results.put(result);
+        }
+        JSONObject links = new JSONObject();
+        if (start + limit < items.size())
+        {
+            links.put("next", exchange.getRequestURI().getPath() + "?limit=" + limit
+                + "&cursor=" + (start + limit)
+                + (bodyFormat != null ? "&body-format=" + bodyFormat : ""));
+        }
+        send(exchange, 200, new JSONObject().put("results", results).put("_links", links)
+            .toString());
+    }
+
+    /**
+     * Send an attachment, supporting conditional and partial requests.
+     * @param exchange HTTP exchange.
+     * @param attachment Attachment file.
+     * @throws IOException If sending the response fails.
+     * @throws InterruptedException If interrupted while waiting for bandwidth.
+     */
+    private void sendAttachment(HttpExchange exchange, File attachment)
+        throws IOException, InterruptedException
+    {
+        String etag = "\"" + Long.toHexString(attachment.length()) + "-"
+            + Long.toHexString(attachment.lastModified()) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+        {
+            status(304);
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        long length = attachment.length();
+        long offset = 0;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (ifRange != null && !ifRange.equals(etag))
+        {
+            // The attachment has changed since the partial download started, send all of it
+            range = null;
+        }
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (matcher != null && matcher.matches() && Long.parseLong(matcher.group(1)) < length)
+        {
+            offset = Long.parseLong(matcher.group(1));
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range",
+                "bytes " + offset + "-" + (length - 1) + "/" + length);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        status(status);
+        exchange.sendResponseHeaders(status, length == offset ? -1 : length - offset);
+        try (RandomAccessFile file = new RandomAccessFile(attachment, "r");
+            OutputStream output = exchange.getResponseBody())
+        {
+            file.seek(offset);
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = file.read(buffer)) != -1)
+            {
+                waitForBandwidth(read);
+                output.write(buffer, 0, read);
+                bytes.add(read);
+            }
+        }
+    }
+
+    /**
+     * Send a JSON response.
+     * @param exchange HTTP exchange.
+     * @param status HTTP status code.
+     * @param json JSON.
+     * @throws IOException If sending the response fails.
+     * @throws InterruptedException If interrupted while waiting for bandwidth.
+     */
+    private void send(HttpExchange exchange, int status, String json)
+        throws IOException, InterruptedException
+    {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        status(status);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody())
+        {
+            for (int offset = 0; offset < body.length; offset += CHUNK_SIZE)
+            {
+                int length = Math.min(CHUNK_SIZE, body.length - offset);
+                waitForBandwidth(length);
+                output.write(body, offset, length);
+                bytes.add(length);
+            }
+        }
+    }
+
+    /**
+     * Count a response.
+     * @param status HTTP status code.
+     */
+    private void status(int status)
+    {
+        statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+    }
+
+    /**
+     * Wait until the bandwidth allows sending more bytes.
+     * @param length Number of bytes to send.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void waitForBandwidth(int length) throws InterruptedException
+    {
+        if (bandwidth <= 0)
+        {
+            return;
+        }
+        long delay;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            bandwidthAvailable = Math.max(bandwidthAvailable, now)
+                + length * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+            delay = bandwidthAvailable - now;
+        }
+        TimeUnit.NANOSECONDS.sleep(delay);
+    }
+
+    /**
+     * Parse the parameters of a request.
+     * @param rawQuery Raw query string, possibly <code>null</code>.
+     * @return Parameters, by name.
+     * @throws IOException Should not be thrown.
+     */
+    private static Map<String, String> query(String rawQuery) throws IOException
+    {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery != null)
+        {
+            for (String parameter : rawQuery.split("&"))
+            {
+                int equals = parameter.indexOf('=');
+                if (equals != -1)
+                {
+                    query.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+}
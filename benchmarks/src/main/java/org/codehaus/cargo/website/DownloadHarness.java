@@ -0,0 +1,191 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Runs the download of the generator against a {@link ConfluenceStub}, and reports its wall time
+ * and number of requests per second. Run it from this directory, after <code>mvn package</code>,
+ * with for example:
+ * <code>java -Dcargo.benchmark.latency=50 -Dcargo.benchmark.throttled=0.01
+ * -Dcargo.downloadConcurrency=8 -cp target/benchmarks.jar
+ * org.codehaus.cargo.website.DownloadHarness</code><br>
+ * <br>
+ * The stub serves the fixtures recorded in the <code>cargo.benchmark.recordedJson</code>
+ * directory (by default, <code>../generator/target/temp</code>) with the attachments downloaded
+ * next to these, or if nothing has been recorded pages made from the generated pages of the
+ * <code>cargo.benchmark.corpus</code> directory (by default, <code>../cargo</code>). Its settings
+ * are the <code>cargo.benchmark.latency</code> (milliseconds),
+ * <code>cargo.benchmark.bandwidth</code> (bytes per second),
+ * <code>cargo.benchmark.unauthorized</code>, <code>cargo.benchmark.throttled</code>,
+ * <code>cargo.benchmark.serverErrors</code> and
+ * <code>cargo.benchmark.hiddenPages</code> (rates between 0 and 1),
+ * <code>cargo.benchmark.retryAfter</code> (seconds), <code>cargo.benchmark.pageSize</code>,
+ * <code>cargo.benchmark.seed</code> and <code>cargo.benchmark.port</code> (by default, any free
+ * port) system properties. The generator settings, such as
+ * <code>cargo.downloadConcurrency</code>, apply as usual.<br>
+ * <br>
+ * The download goes to the <code>target</code> directory, whose previous download is deleted first
+ * unless <code>cargo.benchmark.incremental</code> is <code>true</code>. A download which has
+ * failed is then resumed, if the stub is on the same port.
+ */
+public final class DownloadHarness
+{
+    /**
+     * Utility class.
+     */
+    private DownloadHarness()
+    {
+        // Nothing
+    }
+
+    /**
+     * Start the stub, download from it and report.
+     * @param args Not used.
+     * @throws Exception If anything goes wrong.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File recorded = new File(
+            System.getProperty("cargo.benchmark.recordedJson", "../generator/target/temp"));
+        File corpus = new File(System.getProperty("cargo.benchmark.corpus", "../cargo"));
+        File target = new File("target");
+        if (recorded.getCanonicalFile().equals(new File(target, "temp").getCanonicalFile()))
+        {
+            throw new IllegalArgumentException(
+                "The recorded fixtures cannot be in the download directory " + recorded);
+        }
+        ConfluenceFixtures fixtures =
+            ConfluenceFixtures.load(recorded, new File(recorded.getParentFile(), "attachments"));
+        if (fixtures == null)
+        {
+            System.out.println("No recorded fixtures in " + recorded.getAbsolutePath()
+                + ", making these from " + corpus.getAbsolutePath());
+            fixtures = ConfluenceFixtures.generate(corpus);
+        }
+        ConfluenceStub stub = ConfluenceStub.builder()
+            .fixtures(fixtures)
+            .port(Integer.getInteger("cargo.benchmark.port", 0))
+            .latency(Long.getLong("cargo.benchmark.latency", 0))
+            .bandwidth(Long.getLong("cargo.benchmark.bandwidth", 0))
+            .unauthorized(rate("cargo.benchmark.unauthorized"))
+            .throttled(rate("cargo.benchmark.throttled"),
+                Long.getLong("cargo.benchmark.retryAfter", 1))
+            .serverErrors(rate("cargo.benchmark.serverErrors"))
+            .hiddenPages(rate("cargo.benchmark.hiddenPages"))
+            .pageSize(Integer.getInteger("cargo.benchmark.pageSize", 250))
+            .seed(Long.getLong("cargo.benchmark.seed", 0))
+            .build();
+        stub.start();
+        System.out.println("Serving " + fixtures.getPages().size() + " pages and "
+            + fixtures.getBlogposts().size() + " blog posts on " + stub.getUrl());
+
+        int status = 0;
+        try
+        {
+            // The generator reads its settings when loaded, hence only now
+            System.setProperty("cargo.confluenceUrl", stub.getUrl());
+            if (!Boolean.getBoolean("cargo.benchmark.incremental"))
+            {
+                for (String directory : new String[] {"attachments", "source", "temp"})
+                {
+                    delete(new File(target, directory));
+                }
+            }
+            File credentials = File.createTempFile("confluence-credentials", ".properties");
+            credentials.deleteOnExit();
+            Properties properties = new Properties();
+            properties.setProperty("cargo.confluence.username", "benchmark");
+            properties.setProperty("cargo.confluence.apiKey", "benchmark");
+            try (OutputStream output = Files.newOutputStream(credentials.toPath()))
+            {
+                properties.store(output, null);
+            }
+            WebsiteGenerator.connect(credentials.getPath());
+
+            long start = System.nanoTime();
+            try
+            {
+                WebsiteGenerator.download();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                status = 1;
+            }
+            double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+            System.out.println(String.format(
+                "Downloaded in %.3f seconds: %d requests (%.1f requests/s), %.1f MB (%.1f MB/s)",
+                seconds, stub.getRequests(), stub.getRequests() / seconds,
+                stub.getBytes() / 1048576.0, stub.getBytes() / 1048576.0 / seconds));
+            for (Map.Entry<Integer, Long> response : stub.getStatuses().entrySet())
+            {
+                System.out.println("  - HTTP " + response.getKey() + ": " + response.getValue()
+                    + " responses");
+            }
+        }
+        finally
+        {
+            stub.stop();
+        }
+        // The download threads of the generator may still be alive
+        System.exit(status);
+    }
+
+    /**
+     * Get a rate from a system property.
+     * @param property System property name.
+     * @return Rate, <code>0</code> if the property is not set.
+     */
+    private static double rate(String property)
+    {
+        return Double.parseDouble(System.getProperty(property, "0"));
+    }
+
+    /**
+     * Delete a directory and all its content, if it exists.
+     * @param directory Directory.
+     * @throws IOException If deleting fails.
+     */
+    private static void delete(File directory) throws IOException
+    {
+        if (!directory.exists())
+        {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath()))
+        {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+            {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the stages of the Web site generator, each processing the whole corpus once per
+ * operation. Run these with the GC profiler to also get the allocation rate of each stage:
+ * <code>java -jar target/benchmarks.jar -prof gc</code><br>
+ * <br>
+ * The corpus is made of the generated pages in the directory of the
+ * <code>cargo.benchmark.corpus</code> system property (by default, <code>../cargo</code>), whose
+ * page sources are extracted back from the page layout. The link rewriting passes of the download
+ * instead use the Atlassian Confluence pages recorded in the directory of the
+ * <code>cargo.benchmark.recordedJson</code> system property (by default,
+ * <code>../generator/target/temp</code>) by running the generator with
+ * <code>-Dcargo.keepRawJson=true</code>, or the page sources if there are none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WebsiteGeneratorBenchmark
+{
+    /**
+     * Directory with the generated pages.
+     */
+    private static final File CORPUS =
+        new File(System.getProperty("cargo.benchmark.corpus", "../cargo"));
+
+    /**
+     * Directory with the recorded Atlassian Confluence pages.
+     */
+    private static final File RECORDED_JSON = new File(
+        System.getProperty("cargo.benchmark.recordedJson", "../generator/target/temp"));
+
+    /**
+     * URL of the Atlassian Confluence attachments.
+     */
+    private static final String CONFLUENCE_ATTACHMENTS =
+        "https://codehaus-cargo.atlassian.net/wiki/download/attachments/0/";
+
+    /**
+     * Template of the generator.
+     */
+    private static final File TEMPLATE =
+        new File("../generator/src/main/resources/cargo-template.html");
+
+    /**
+     * Titles of the pages.
+     */
+    private List<String> titles;
+
+    /**
+     * Page sources, extracted from the generated pages.
+     */
+    private List<String> sources;
+
+    /**
+     * Page bodies, as downloaded from Atlassian Confluence.
+     */
+    private List<String> bodies;
+
+    /**
+     * Page template, with the navigation in it.
+     */
+    private PageTemplate template;
+
+    /**
+     * Pages merged with the template, as rendered before being parsed.
+     */
+    private List<String> merged;
+
+    /**
+     * Generated pages, as written.
+     */
+    private List<String> generated;
+
+    /**
+     * Directory the generated pages are written to.
+     */
+    private File output;
+
+    /**
+     * Number of times the pages have been written, so that these change every other time.
+     */
+    private int writes;
+
+    /**
+     * Load the corpus.
+     * @throws IOException If reading the corpus fails.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        File[] files = CORPUS.listFiles();
+        if (files == null)
+        {
+            throw new IOException("Cannot list corpus directory " + CORPUS.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        titles = new ArrayList<String>();
+        sources = new ArrayList<String>();
+        String navigation = null;
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (!file.isFile() || !name.endsWith(".html"))
+            {
+                continue;
+            }
+            name = name.substring(0, name.length() - 5);
+            Element source = Jsoup.parse(WebsiteGenerator.readFile(file))
+                .selectFirst("td.rightColumn");
+            if (source == null)
+            {
+                continue;
+            }
+            titles.add(URLDecoder.decode(name, "UTF-8"));
+            sources.add(source.html());
+            if ("Navigation".equals(name))
+            {
+                navigation = source.html();
+            }
+        }
+        if (navigation == null)
+        {
+            throw new IOException("No Navigation page in corpus directory "
+                + CORPUS.getAbsolutePath());
+        }
+
+        bodies = new ArrayList<String>();
+        File[] recordedFiles = RECORDED_JSON.listFiles();
+        if (recordedFiles != null)
+        {
+            Arrays.sort(recordedFiles);
+            for (File file : recordedFiles)
+            {
+                if (file.isFile() && file.getName().matches("\\d+"))
+                {
+                    JSONObject page = new JSONObject(WebsiteGenerator.readFile(file));
+                    JSONObject body = page.optJSONObject("body");
+                    if (body != null && body.has("view"))
+                    {
+                        bodies.add(body.getJSONObject("view").getString("value"));
+                    }
+                }
+            }
+        }
+        if (bodies.isEmpty())
+        {
+            // Make the images point to Atlassian Confluence again, as the download sees these
+            for (String source : sources)
+            {
+                bodies.add(source.replace(
+                    "src=\"attachments/", "src=\"" + CONFLUENCE_ATTACHMENTS));
+            }
+        }
+
+        template = new PageTemplate(WebsiteGenerator.readFile(TEMPLATE)
+            .replace("$navigation", navigation), WebsiteGenerator.TEMPLATE_REWRITER);
+        merged = new ArrayList<String>();
+        for (int i = 0; i < sources.size(); i++)
+        {
+            merged.add(readAll(render(titles.get(i), sources.get(i))));
+        }
+        generated = new ArrayList<String>();
+        for (String page : merged)
+        {
+            Document document = Parser.htmlParser().parseInput(page, "");
+            WebsiteGenerator.DOCUMENT_TRANSFORMER.transform(document);
+            generated.add(WebsiteGenerator.HTML_REWRITER.rewrite(document.html()));
+        }
+        output = Files.createTempDirectory("cargo-website-benchmark").toFile();
+    }
+
+    /**
+     * Delete the written pages.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        File[] files = output.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        output.delete();
+    }
+
+    /**
+     * Benchmark the conversion of the page titles to file names.
+     * @param blackhole Blackhole.
+     * @throws IOException If anything goes wrong.
+     */
+    @Benchmark
+    public void toFilename(Blackhole blackhole) throws IOException
+    {
+        for (String title : titles)
+        {
+            blackhole.consume(WebsiteGenerator.toFilename(title));
+        }
+    }
+
+    /**
+     * Benchmark the rewriting of the downloaded pages, including their links.
+     * @param blackhole Blackhole.
+     * @throws IOException If anything goes wrong.
+     */
+    @Benchmark
+    public void rewriteLinks(Blackhole blackhole) throws IOException
+    {
+        for (String body : bodies)
+        {
+            String value = WebsiteGenerator.BODY_REWRITER.rewrite(body);
+            blackhole.consume(WebsiteGenerator.LINK_REWRITER.rewrite(value));
+        }
+    }
+
+    /**
+     * Benchmark the rewriting of the page sources and their merging with the template.
+     * @param blackhole Blackhole.
+     * @throws IOException If anything goes wrong.
+     */
+    @Benchmark
+    public void mergeTemplate(Blackhole blackhole) throws IOException
+    {
+        for (int i = 0; i < sources.size(); i++)
+        {
+            blackhole.consume(readAll(render(titles.get(i), sources.get(i))));
+        }
+    }
+
+    /**
+     * Benchmark the parsing, transformation and serialization of the pages merged with the
+     * template.
+     * @param blackhole Blackhole.
+     */
+    @Benchmark
+    public void transform(Blackhole blackhole)
+    {
+        for (String page : merged)
+        {
+            Document document = Parser.htmlParser().parseInput(page, "");
+            WebsiteGenerator.DOCUMENT_TRANSFORMER.transform(document);
+            blackhole.consume(WebsiteGenerator.HTML_REWRITER.rewrite(document.html()));
+        }
+    }
+
+    /**
+     * Benchmark the writing of pages which have not changed, hence are only compared.
+     * @param blackhole Blackhole.
+     * @throws IOException If anything goes wrong.
+     */
+    @Benchmark
+    public void writeFileUnchanged(Blackhole blackhole) throws IOException
+    {
+        for (int i = 0; i < generated.size(); i++)
+        {
+            blackhole.consume(
+                WebsiteGenerator.writeFile(new File(output, i + ".html"), generated.get(i)));
+        }
+    }
+
+    /**
+     * Benchmark the writing of pages which have changed, every other time by an extra line.
+     * @param blackhole Blackhole.
+     * @throws IOException If anything goes wrong.
+     */
+    @Benchmark
+    public void writeFileChanged(Blackhole blackhole) throws IOException
+    {
+        String suffix = writes++ % 2 == 0 ? "\n" : "";
+        for (int i = 0; i < generated.size(); i++)
+        {
+            blackhole.consume(WebsiteGenerator.writeFile(
+                new File(output, "changed-" + i + ".html"), generated.get(i) + suffix));
+        }
+    }
+
+    /**
+     * Rewrite a page source and merge it with the template, as the generator does.
+     * @param title Page title.
+     * @param source Page source.
+     * @return Page merged with the template.
+     * @throws IOException If anything goes wrong.
+     */
+    private Reader render(String title, String source) throws IOException
+    {
+        String name = WebsiteGenerator.toFilename(title);
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("name", name);
+        values.put("title", title);
+        values.put("breadcrumbs", "");
+        values.put("value", WebsiteGenerator.SOURCE_REWRITER.rewrite(source));
+        values.put("canonical", "https://codehaus-cargo.github.io/cargo/" + name + ".html");
+        values.put("lastModified", "");
+        return template.render(values);
+    }
+
+    /**
+     * Read a page merged with the template.
+     * @param reader Reader of the page.
+     * @return Page.
+     * @throws IOException If reading fails.
+     */
+    private static String readAll(Reader reader) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8 * 1024];
+        int read;
+        while ((read = reader.read(buffer)) != -1)
+        {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+
+/**
+ * Downloads attachments. The response body is written by the HTTP client straight into a
+ * {@link java.nio.channels.FileChannel} on a partial file, which is only moved into place once
+ * complete. If the download fails midway, the partial file is kept and the next attempt only asks
+ * for the missing bytes, using an HTTP <code>Range</code> request. The ETag (or Last-Modified) of
+ * the response which started the partial file is saved next to it and sent as
+ * <code>If-Range</code>, so a server whose attachment has changed meanwhile sends the whole new
+ * file instead of the rest of another one; a partial file without any saved validator is
+ * discarded.<br>
+ * <br>
+ * Downloaded attachments are kept in a persistent cache: the content is stored once per SHA-256
+ * hash (so identical content referenced under different attachment URLs is only stored once) and
+ * the ETag and Last-Modified of each URL are remembered, so that the next run sends conditional
+ * requests and, for unchanged attachments, only gets an empty <code>304 Not Modified</code>
+ * response. The attachment files are hard links to the cached content when the file system
+ * supports it, copies otherwise.
+ */
+public class AttachmentDownloader
+{
+    /**
+     * Result of an attachment download.
+     */
+    public static class Result
+    {
+        /**
+         * Number of bytes downloaded.
+         */
+        private final long bytes;
+
+        /**
+         * HTTP status code of the response.
+         */
+        private final int statusCode;
+
+        /**
+         * Saves the attributes.
+         * @param bytes Number of bytes downloaded.
+         * @param statusCode HTTP status code of the response.
+         */
+        Result(long bytes, int statusCode)
+        {
+            this.bytes = bytes;
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return Number of bytes downloaded.
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * @return HTTP status code of the response, for example <code>304</code> for an attachment
+         * not modified since the previous download or <code>206</code> for a resumed download.
+         */
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+    }
+
+    /**
+     * Pattern for the <code>Content-Range</code> header of a partial response.
+     */
+    private static final Pattern CONTENT_RANGE =
+        Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /**
+     * Extensions of the images, which are small.
+     */
+    private static final Set<String> IMAGES =
+        new HashSet<String>(Arrays.asList("png", "gif", "jpg", "jpeg", "svg", "ico"));
+
+    /**
+     * Extensions of the archives, which are large: mostly the Codehaus Cargo releases.
+     */
+    private static final Set<String> ARCHIVES = new HashSet<String>(
+        Arrays.asList("zip", "gz", "tgz", "tar", "jar", "war", "ear"));
+
+    /**
+     * Expected size of an image never downloaded before, in bytes.
+     */
+    private static final long IMAGE_SIZE = 32 * 1024;
+
+    /**
+     * Expected size of an archive never downloaded before, in bytes.
+     */
+    private static final long ARCHIVE_SIZE = 2 * 1024 * 1024;
+
+    /**
+     * Expected size of any other attachment never downloaded before, in bytes.
+     */
+    private static final long DEFAULT_SIZE = 256 * 1024;
+
+    /**
+     * HTTP transport.
+     */
+    private final HttpTransport transport;
+
+    /**
+     * Directory with the partial files.
+     */
+    private final File partialDirectory;
+
+    /**
+     * Directory with the cached content, one file per SHA-256 hash.
+     */
+    private final File contentDirectory;
+
+    /**
+     * Cache index file.
+     */
+    private final File indexFile;
+
+    /**
+     * Cache index, with the ETag, Last-Modified and SHA-256 hash of each attachment URL.
+     */
+    private final Map<String, JSONObject> index = new ConcurrentHashMap<String, JSONObject>();
+
+    /**
+     * Number of attachments which have not been modified since the previous download.
+     */
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    /**
+     * Number of downloaded attachments whose content was already in the cache.
+     */
+    private final AtomicInteger deduplicated = new AtomicInteger();
+
+    /**
+     * Saves the attributes and loads the cache index, if any.
+     * @param transport HTTP transport.
+     * @param cacheDirectory Cache directory, which must be on the same file system as the
+     * attachments so these can be moved atomically and hard linked.
+     * @throws IOException If reading the cache index fails.
+     */
+    public AttachmentDownloader(HttpTransport transport, File cacheDirectory) throws IOException
+    {
+        this.transport = transport;
+        this.partialDirectory = new File(cacheDirectory, "partial");
+        this.contentDirectory = new File(cacheDirectory, "content");
+        this.indexFile = new File(cacheDirectory, "index.json");
+        partialDirectory.mkdirs();
+        contentDirectory.mkdirs();
+        if (indexFile.isFile())
+        {
+            JSONObject saved = new JSONObject(
+                new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8));
+            for (String url : saved.keySet())
+            {
+                index.put(url, saved.getJSONObject(url));
+            }
+        }
+    }
+
+    /**
+     * Save the cache index, so the next run can send conditional requests.
+     * @throws IOException If writing the cache index fails.
+     */
+    public void save() throws IOException
+    {
+        Path temp = new File(indexFile.getPath() + ".tmp").toPath();
+        Files.write(temp, new JSONObject(index).toString(4).getBytes(StandardCharsets.UTF_8));
+        move(temp, indexFile.toPath());
+    }
+
+    /**
+     * @return Number of attachments which have not been modified since the previous download.
+     */
+    public int getNotModified()
+    {
+        return notModified.get();
+    }
+
+    /**
+     * @return Number of downloaded attachments whose content was already in the cache.
+     */
+    public int getDeduplicated()
+    {
+        return deduplicated.get();
+    }
+
+    /**
+     * Get the expected size of an attachment, so that the small attachments can be downloaded
+     * first: the size of the previous download if any, otherwise the usual size of its file type.
+     * @param url Attachment URL.
+     * @return Expected size of the attachment, in bytes.
+     */
+    public long getExpectedSize(URL url)
+    {
+        JSONObject cached = index.get(url.toString());
+        if (cached != null && cached.has("size"))
+        {
+            return cached.getLong("size");
+        }
+        String path = url.getPath().toLowerCase(Locale.ENGLISH);
+        String extension = path.substring(path.lastIndexOf('.') + 1);
+        if (IMAGES.contains(extension))
+        {
+            return IMAGE_SIZE;
+        }
+        else if (ARCHIVES.contains(extension))
+        {
+            return ARCHIVE_SIZE;
+        }
+        return DEFAULT_SIZE;
+    }
+
+    /**
+     * Download an attachment, unless it has not been modified since the previous download, and
+     * resuming any earlier partial download of it.
+     * @param url Attachment URL.
+     * @param file File to save the attachment to.
+     * @param authenticate Whether to send the authorization header.
+     * @return Number of bytes downloaded and HTTP status code of the response.
+     * @throws IOException If the download fails, in which case the bytes downloaded so far are
+     * kept for the next attempt.
+     * @throws InterruptedException If interrupted while downloading.
+     */
+    public Result download(URL url, File file, boolean authenticate)
+        throws IOException, InterruptedException
+    {
+        // Attachments of different pages can have the same name, hence the URL hash
+        final Path partial = new File(partialDirectory,
+            Integer.toHexString(url.toString().hashCode()) + "-" + file.getName() + ".part")
+                .toPath();
+        final Path validatorFile = validatorFile(partial);
+        final long offset;
+        Map<String, String> headers = new HashMap<String, String>();
+        if (Files.isRegularFile(partial) && Files.size(partial) > 0
+            && Files.isRegularFile(validatorFile))
+        {
+            offset = Files.size(partial);
+            headers.put("Range", "bytes=" + offset + "-");
+            headers.put("If-Range",
+                new String(Files.readAllBytes(validatorFile), StandardCharsets.UTF_8));
+        }
+        else
+        {
+            // Nothing tells whether the partial file is from the current attachment, start over
+            deletePartial(partial);
+            offset = 0;
+        }
+        JSONObject cached = index.get(url.toString());
+        if (cached != null && content(cached.getString("sha256")).isFile())
+        {
+            if (cached.has("etag"))
+            {
+                headers.put("If-None-Match", cached.getString("etag"));
+            }
+            if (cached.has("lastModified"))
+            {
+                headers.put("If-Modified-Since", cached.getString("lastModified"));
+            }
+        }
+
+        // Validator of the response which starts a new partial file, empty if it has none
+        final AtomicReference<String> started = new AtomicReference<String>();
+        HttpResponse<Path> response;
+        try
+        {
+            response = transport.send(url, authenticate, headers,
+                new HttpResponse.BodyHandler<Path>()
+                {
+                    @Override
+                    public HttpResponse.BodySubscriber<Path> apply(
+                        HttpResponse.ResponseInfo info)
+                    {
+                        if (info.statusCode() == 304)
+                        {
+                            return HttpResponse.BodySubscribers.replacing(null);
+                        }
+                        else if (info.statusCode() == 206)
+                        {
+                            Matcher range = contentRange(info.headers());
+                            if (offset > 0 && range != null
+                                && Long.parseLong(range.group(1)) == offset)
+                            {
+                                return HttpResponse.BodySubscribers.ofFile(partial,
+                                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                            }
+                            // Not the range we asked for, cannot be used
+                            return HttpResponse.BodySubscribers.replacing(null);
+                        }
+                        // The server ignored the range, or the If-Range did not match, and sent
+                        // the whole file
+                        started.set(validator(info.headers()));
+                        return HttpResponse.BodySubscribers.ofFile(partial,
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+                    }
+                });
+        }
+        catch (HttpStatusException e)
+        {
+            if (e.getStatusCode() == 416)
+            {
+                // The partial file does not match the attachment anymore, start over
+                deletePartial(partial);
+            }
+            throw e;
+        }
+        finally
+        {
+            // Saved even if the download fails midway, since that is when the next attempt needs it
+            String validator = started.get();
+            if (validator != null)
+            {
+                if (validator.isEmpty())
+                {
+                    Files.deleteIfExists(validatorFile);
+                }
+                else
+                {
+                    Files.write(validatorFile, validator.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (response.statusCode() == 304)
+        {
+            deletePartial(partial);
+            link(content(cached.getString("sha256")), file);
+            notModified.incrementAndGet();
+            return new Result(0, response.statusCode());
+        }
+        else if (response.body() == null)
+        {
+            deletePartial(partial);
+            throw new IOException("Unexpected Content-Range "
+                + response.headers().firstValue("Content-Range").orElse("") + " for URL: " + url);
+        }
+
+        long size = Files.size(partial);
+        long expected = -1;
+        if (response.statusCode() == 206)
+        {
+            Matcher range = contentRange(response.headers());
+            if (!"*".equals(range.group(3)))
+            {
+                expected = Long.parseLong(range.group(3));
+            }
+        }
+        else
+        {
+            OptionalLong length = response.headers().firstValueAsLong("Content-Length");
+            if (length.isPresent())
+            {
+                expected = length.getAsLong();
+            }
+        }
+        if (expected >= 0 && size != expected)
+        {
+            throw new IOException(
+                "Got " + size + " bytes instead of " + expected + " for URL: " + url);
+        }
+
+        String sha256 = sha256(partial);
+        File content = content(sha256);
+        if (content.isFile())
+        {
+            Files.delete(partial);
+            deduplicated.incrementAndGet();
+        }
+        else
+        {
+            move(partial, content.toPath());
+        }
+        Files.deleteIfExists(validatorFile);
+        link(content, file);
+
+        JSONObject entry = new JSONObject();
+        entry.put("sha256", sha256);
+        entry.put("size", size);
+        Optional<String> etag = response.headers().firstValue("ETag");
+        if (etag.isPresent())
+        {
+            entry.put("etag", etag.get());
+        }
+        Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+        if (lastModified.isPresent())
+        {
+            entry.put("lastModified", lastModified.get());
+        }
+        index.put(url.toString(), entry);
+
+        if (response.statusCode() == 206)
+        {
+            return new Result(size - offset, response.statusCode());
+        }
+        return new Result(size, response.statusCode());
+    }
+
+    /**
+     * Get the cache file for some content.
+     * @param sha256 SHA-256 hash of the content.
+     * @return Cache file for the content.
+     */
+    private File content(String sha256)
+    {
+        return new File(contentDirectory, sha256);
+    }
+
+    /**
+     * Get the file with the validator of a partial file.
+     * @param partial Partial file.
+     * @return File with the ETag or Last-Modified of the response which started the partial file.
+     */
+    private static Path validatorFile(Path partial)
+    {
+        return partial.resolveSibling(partial.getFileName() + ".validator");
+    }
+
+    /**
+     * Delete a partial file, if any, and its validator.
+     * @param partial Partial file.
+     * @throws IOException If deleting fails.
+     */
+    private static void deletePartial(Path partial) throws IOException
+    {
+        Files.deleteIfExists(partial);
+        Files.deleteIfExists(validatorFile(partial));
+    }
+
+    /**
+     * Get the validator to resume a download with.
+     * @param headers Headers of the response which starts the download.
+     * @return Strong ETag or, if there is none, Last-Modified of the response; empty if there is
+     * neither, as <code>If-Range</code> cannot be used with a weak ETag.
+     */
+    private static String validator(HttpHeaders headers)
+    {
+        Optional<String> etag = headers.firstValue("ETag");
+        if (etag.isPresent() && !etag.get().startsWith("W/"))
+        {
+            return etag.get();
+        }
+        return headers.firstValue("Last-Modified").orElse("");
+    }
+
+    /**
+     * Calculate the SHA-256 hash of a file.
+     * @param path File.
+     * @return SHA-256 hash of the file, in hexadecimal.
+     * @throws IOException If reading the file fails.
+     */
+    private static String sha256(Path path) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) != -1)
+            {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Move a file atomically, replacing the target if it exists.
+     * @param source File to move.
+     * @param target Target file.
+     * @throws IOException If moving fails.
+     */
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target,
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Make an attachment file point to cached content, with a hard link if possible. The link (or
+     * copy) is created next to the attachment file first and then moved into place, so the
+     * attachment file is never seen incomplete.
+     * @param content Cached content.
+     * @param file Attachment file.
+     * @throws IOException If linking and copying both fail.
+     */
+    private static void link(File content, File file) throws IOException
+    {
+        if (file.isFile() && Files.isSameFile(content.toPath(), file.toPath()))
+        {
+            return;
+        }
+        // Attachments of different pages can have the same name, hence the thread identifier
+        Path temp = new File(file.getParentFile(),
+            "." + file.getName() + "." + Thread.currentThread().getId() + ".tmp").toPath();
+        Files.deleteIfExists(temp);
+        try
+        {
+            Files.createLink(temp, content.toPath());
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            Files.copy(content.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        move(temp, file.toPath());
+        // Renaming a hard link onto another hard link to the same file does nothing
+        Files.deleteIfExists(temp);
+    }
+
+    /**
+     * Parse the <code>Content-Range</code> header of a partial response.
+     * @param headers Response headers.
+     * @return Matcher with the first byte, last byte and total length as groups, or
+     * <code>null</code> if there is no (valid) header.
+     */
+    private static Matcher contentRange(HttpHeaders headers)
+    {
+        Matcher matcher = CONTENT_RANGE.matcher(headers.firstValue("Content-Range").orElse(""));
+        if (matcher.matches())
+        {
+            return matcher;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Output stream which only writes a file if its content changes. As long as the bytes written
+ * are the same as those of the existing file, these are only compared with it; once they differ,
+ * the content is written to a temporary file which replaces the existing file when the stream is
+ * closed. An unchanged file is hence never written, and keeps its modification time.
+ */
+public class ChangeDetectingOutputStream extends OutputStream
+{
+    /**
+     * File to write.
+     */
+    private final File file;
+
+    /**
+     * Temporary file receiving the content once it differs from the existing file.
+     */
+    private final File temporaryFile;
+
+    /**
+     * Existing file being compared with, <code>null</code> once the content differs.
+     */
+    private InputStream existing;
+
+    /**
+     * Temporary file being written, <code>null</code> as long as the content is the same as the
+     * existing file.
+     */
+    private OutputStream output;
+
+    /**
+     * Number of bytes written so far which are the same as the existing file.
+     */
+    private long matched = 0;
+
+    /**
+     * Buffer for reading the existing file.
+     */
+    private byte[] buffer = new byte[8 * 1024];
+
+    /**
+     * Whether the file has changed, only known once the stream is closed.
+     */
+    private boolean changed = false;
+
+    /**
+     * Whether the stream is closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Create the output stream.
+     * @param file File to write.
+     * @throws IOException If opening the existing file fails.
+     */
+    public ChangeDetectingOutputStream(File file) throws IOException
+    {
+        this.file = file;
+        this.temporaryFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        if (file.isFile())
+        {
+            this.existing = new BufferedInputStream(new FileInputStream(file));
+        }
+        else
+        {
+            diverge();
+        }
+    }
+
+    /**
+     * @return Whether the file has changed (or has been created), only known once the stream is
+     * closed.
+     */
+    public boolean isChanged()
+    {
+        return changed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (output == null)
+        {
+            if (buffer.length < len)
+            {
+                buffer = new byte[len];
+            }
+            int read = existing.readNBytes(buffer, 0, len);
+            int same = 0;
+            while (same < read && buffer[same] == b[off + same])
+            {
+                same++;
+            }
+            if (same == len)
+            {
+                matched += len;
+                return;
+            }
+            matched += same;
+            off += same;
+            len -= same;
+            diverge();
+        }
+        output.write(b, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (output != null)
+        {
+            output.flush();
+        }
+    }
+
+    /**
+     * Close the stream and, if the content has changed, replace the file with the new content.
+     * @throws IOException If writing the file fails.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        if (output == null)
+        {
+            if (existing.read() == -1)
+            {
+                existing.close();
+                return;
+            }
+            // The existing file is longer than the new content
+            diverge();
+        }
+        output.close();
+        try
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        changed = true;
+    }
+
+    /**
+     * Start writing the temporary file, with the bytes matched so far.
+     * @throws IOException If copying the bytes matched so far fails.
+     */
+    private void diverge() throws IOException
+    {
+        output = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+        if (existing != null)
+        {
+            existing.close();
+            existing = null;
+            try (InputStream matchedBytes = new FileInputStream(file))
+            {
+                long remaining = matched;
+                while (remaining > 0)
+                {
+                    int read =
+                        matchedBytes.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1)
+                    {
+                        throw new IOException("File " + file + " has been truncated while written");
+                    }
+                    output.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+}
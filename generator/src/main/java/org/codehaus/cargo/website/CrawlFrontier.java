@@ -0,0 +1,466 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawl frontier, which executes the download tasks and keeps track of the outstanding ones,
+ * including the tasks submitted by other tasks while these are running (for example, when new
+ * pages are found via links) and the tasks which asked to be retried later.<br>
+ * <br>
+ * The tasks wait in lanes: pages run before attachments, as these are what new pages are found
+ * via, and attachments run smallest first, so that images do not wait for large archives. The
+ * attachments can also be limited to part of the concurrency, leaving the rest to the pages.
+ */
+public class CrawlFrontier
+{
+    /**
+     * Lane of a task, in priority order.
+     */
+    public enum Lane
+    {
+        /**
+         * Page or blog post.
+         */
+        PAGE,
+
+        /**
+         * Attachment.
+         */
+        ATTACHMENT
+    }
+
+    /**
+     * Task run by the crawl frontier.
+     */
+    public interface Task
+    {
+        /**
+         * Run the task.
+         * @return Delay in milliseconds after which the task wants to be run again (for example,
+         * to retry a failed download), or a negative value if the task is complete.
+         */
+        long execute();
+    }
+
+    /**
+     * Listener notified of the progress of the crawl.
+     */
+    public interface Listener
+    {
+        /**
+         * Called each time a task has completed, whether successfully or not.
+         * @param completed Number of completed tasks so far.
+         * @param submitted Number of submitted tasks so far.
+         */
+        void taskCompleted(int completed, int submitted);
+    }
+
+    /**
+     * Task waiting in a lane.
+     */
+    private static class Entry implements Comparable<Entry>
+    {
+        /**
+         * Task.
+         */
+        private final Task task;
+
+        /**
+         * Lane of the task.
+         */
+        private final Lane lane;
+
+        /**
+         * Expected size of the download, in bytes.
+         */
+        private final long size;
+
+        /**
+         * Submission order of the task, for the tasks with the same size.
+         */
+        private final long sequence;
+
+        /**
+         * Saves the attributes.
+         * @param task Task.
+         * @param lane Lane of the task.
+         * @param size Expected size of the download, in bytes.
+         * @param sequence Submission order of the task.
+         */
+        Entry(Task task, Lane lane, long size, long sequence)
+        {
+            this.task = task;
+            this.lane = lane;
+            this.size = size;
+            this.sequence = sequence;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo(Entry other)
+        {
+            int compare = Long.compare(size, other.size);
+            if (compare == 0)
+            {
+                compare = Long.compare(sequence, other.sequence);
+            }
+            return compare;
+        }
+    }
+
+    /**
+     * Executor running the tasks.
+     */
+    private final Executor executor;
+
+    /**
+     * Listener notified of the progress of the crawl.
+     */
+    private final Listener listener;
+
+    /**
+     * Maximum number of tasks running at the same time.
+     */
+    private final int concurrency;
+
+    /**
+     * Maximum number of tasks of each lane running at the same time.
+     */
+    private final Map<Lane, Integer> budgets = new EnumMap<Lane, Integer>(Lane.class);
+
+    /**
+     * Tasks waiting to run, by lane.
+     */
+    private final Map<Lane, PriorityQueue<Entry>> queues =
+        new EnumMap<Lane, PriorityQueue<Entry>>(Lane.class);
+
+    /**
+     * Number of tasks running, by lane. Guarded by the queues.
+     */
+    private final Map<Lane, Integer> running = new EnumMap<Lane, Integer>(Lane.class);
+
+    /**
+     * Number of tasks running. Guarded by the queues.
+     */
+    private int runningTasks = 0;
+
+    /**
+     * Number of tasks submitted so far, to run the tasks with the same size in order.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Scheduler for the tasks to run again later, which only submits these to the executor once
+     * their delay has elapsed so no thread is held while waiting.
+     */
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cargo-retry-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /**
+     * Phaser with one party per outstanding task, plus one party for the owner of the crawl.
+     */
+    private final Phaser phaser = new Phaser(1);
+
+    /**
+     * Number of submitted tasks.
+     */
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    /**
+     * Number of completed tasks.
+     */
+    private final AtomicInteger completed = new AtomicInteger();
+
+    /**
+     * Saves the attributes.
+     * @param executor Executor running the tasks.
+     * @param concurrency Maximum number of tasks running at the same time.
+     * @param attachmentConcurrency Maximum number of attachment tasks running at the same time.
+     * @param listener Listener notified of the progress of the crawl.
+     */
+    public CrawlFrontier(Executor executor, int concurrency, int attachmentConcurrency,
+        Listener listener)
+    {
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.listener = listener;
+        budgets.put(Lane.PAGE, concurrency);
+        budgets.put(Lane.ATTACHMENT, Math.min(concurrency, Math.max(1, attachmentConcurrency)));
+        for (Lane lane : Lane.values())
+        {
+            queues.put(lane, new PriorityQueue<Entry>());
+            running.put(lane, 0);
+        }
+    }
+
+    /**
+     * Create an executor for running the tasks. When virtual threads are requested and supported
+     * (i.e., Java 21 onwards), each task gets its own virtual thread and the number of tasks
+     * running at the same time is only capped by the crawl frontier; else a pool of
+     * <code>concurrency</code> platform threads is used.
+     * @param virtualThreads Whether to use virtual threads.
+     * @param concurrency Maximum number of tasks running at the same time.
+     * @return Executor for running the tasks.
+     */
+    public static ExecutorService createExecutor(boolean virtualThreads, int concurrency)
+    {
+        if (virtualThreads)
+        {
+            try
+            {
+                return (ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (ReflectiveOperationException | UnsupportedOperationException e)
+            {
+                // Java 19 and 20 only have virtual threads as a preview feature, earlier versions
+                // do not have virtual threads at all: fall back to platform threads
+            }
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(concurrency, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread =
+                    new Thread(runnable, "cargo-downloader-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submit a task. Tasks can submit other tasks while they are running, the crawl only
+     * completes once all of these have completed as well.
+     * @param task Task to run.
+     * @param lane Lane of the task.
+     * @param size Expected size of the download in bytes, the smallest tasks of each lane running
+     * first.
+     */
+    public void submit(Task task, Lane lane, long size)
+    {
+        phaser.register();
+        submitted.incrementAndGet();
+        dispatch(new Entry(task, lane, size, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Queue a task which has already been submitted, and start the tasks which can run.
+     * @param entry Task to run.
+     */
+    private void dispatch(Entry entry)
+    {
+        synchronized (queues)
+        {
+            queues.get(entry.lane).add(entry);
+        }
+        startTasks();
+    }
+
+    /**
+     * Start the queued tasks, by lane priority, as long as the concurrency and the budgets of
+     * their lanes allow.
+     */
+    private void startTasks()
+    {
+        List<Entry> started = new ArrayList<Entry>();
+        synchronized (queues)
+        {
+            while (runningTasks < concurrency)
+            {
+                Entry next = null;
+                for (Lane lane : Lane.values())
+                {
+                    if (!queues.get(lane).isEmpty() && running.get(lane) < budgets.get(lane))
+                    {
+                        next = queues.get(lane).poll();
+                        break;
+                    }
+                }
+                if (next == null)
+                {
+                    break;
+                }
+                running.put(next.lane, running.get(next.lane) + 1);
+                runningTasks++;
+                started.add(next);
+            }
+        }
+        for (Entry entry : started)
+        {
+            run(entry);
+        }
+    }
+
+    /**
+     * Have the executor run a task which has been started.
+     * @param entry Task to run.
+     */
+    private void run(final Entry entry)
+    {
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    long delay = -1;
+                    try
+                    {
+                        delay = entry.task.execute();
+                    }
+                    finally
+                    {
+                        finished(entry);
+                        if (delay < 0)
+                        {
+                            complete();
+                        }
+                    }
+                    if (delay == 0)
+                    {
+                        dispatch(entry);
+                    }
+                    else if (delay > 0)
+                    {
+                        schedule(entry, delay);
+                    }
+                    startTasks();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            finished(entry);
+            complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Release the concurrency used by a task which is no longer running.
+     * @param entry Task.
+     */
+    private void finished(Entry entry)
+    {
+        synchronized (queues)
+        {
+            running.put(entry.lane, running.get(entry.lane) - 1);
+            runningTasks--;
+        }
+    }
+
+    /**
+     * Have a task which has already been submitted run again after a delay.
+     * @param entry Task to run again.
+     * @param delay Delay in milliseconds.
+     */
+    private void schedule(final Entry entry, long delay)
+    {
+        try
+        {
+            scheduler.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dispatch(entry);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Mark a task as completed.
+     */
+    private void complete()
+    {
+        int done = completed.incrementAndGet();
+        try
+        {
+            listener.taskCompleted(done, submitted.get());
+        }
+        finally
+        {
+            phaser.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * Wait until all submitted tasks, including the ones submitted while waiting, have completed.
+     * This method returns as soon as the last task completes.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void await() throws InterruptedException
+    {
+        phaser.awaitAdvanceInterruptibly(phaser.arrive());
+    }
+
+    /**
+     * @return Number of submitted tasks.
+     */
+    public int getSubmitted()
+    {
+        return submitted.get();
+    }
+
+    /**
+     * @return Number of completed tasks.
+     */
+    public int getCompleted()
+    {
+        return completed.get();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+/**
+ * Applies a set of rules to all elements of a document in one traversal of the tree. Each element
+ * is given to the rules, in order, before its children are traversed; a rule can hence modify the
+ * children of the element (the traversal then continues with the modified children) or have the
+ * whole element removed.
+ */
+public final class DocumentTransformer
+{
+    /**
+     * Rule applied to the elements of a document.
+     */
+    public interface Rule
+    {
+        /**
+         * Apply the rule to an element.
+         * @param element Element, whose children have not been traversed yet.
+         * @return <code>true</code> to remove the element (the next rules are then not applied to
+         * it and its children are not traversed), <code>false</code> otherwise.
+         */
+        boolean apply(Element element);
+    }
+
+    /**
+     * Builder for a {@link DocumentTransformer}.
+     */
+    public static class Builder
+    {
+        /**
+         * Rules added so far.
+         */
+        private final List<Rule> rules = new ArrayList<Rule>();
+
+        /**
+         * Add a rule, applied after the rules already added.
+         * @param rule Rule.
+         * @return This builder.
+         */
+        public Builder rule(Rule rule)
+        {
+            rules.add(rule);
+            return this;
+        }
+
+        /**
+         * @return Document transformer with all rules added so far.
+         */
+        public DocumentTransformer build()
+        {
+            return new DocumentTransformer(rules.toArray(new Rule[rules.size()]));
+        }
+    }
+
+    /**
+     * Rules, in order.
+     */
+    private final Rule[] rules;
+
+    /**
+     * Traversal filter applying the rules.
+     */
+    private final NodeFilter filter = new NodeFilter()
+    {
+        @Override
+        public FilterResult head(Node node, int depth)
+        {
+            if (node instanceof Element)
+            {
+                for (Rule rule : rules)
+                {
+                    if (rule.apply((Element) node))
+                    {
+                        return FilterResult.REMOVE;
+                    }
+                }
+            }
+            return FilterResult.CONTINUE;
+        }
+    };
+
+    /**
+     * Saves the attributes.
+     * @param rules Rules, in order.
+     */
+    private DocumentTransformer(Rule[] rules)
+    {
+        this.rules = rules;
+    }
+
+    /**
+     * @return Builder for a new document transformer.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Apply the rules to all elements below a node.
+     * @param root Root node, for example a document. The rules are applied to the root node as
+     * well, but it cannot be removed.
+     */
+    public void transform(Node root)
+    {
+        NodeTraversor.filter(filter, root);
+    }
+}
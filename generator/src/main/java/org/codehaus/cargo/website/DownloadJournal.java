@@ -0,0 +1,263 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Append-only journal of a download, so that a download which fails (or is killed) is resumed by
+ * the next one instead of starting over.<br>
+ * <br>
+ * Each line is a JSON record: a URL found via a link, or a completed download with its output
+ * file and, for pages and blog posts, their download manifest entry. Each record is flushed as
+ * soon as it is written; a last line which is cut short, for example by a crash, is dropped when
+ * the journal is read again. The journal is deleted once the download has completed.
+ */
+public class DownloadJournal implements Closeable
+{
+    /**
+     * Journal file.
+     */
+    private final File file;
+
+    /**
+     * Output stream to append records to.
+     */
+    private final OutputStream output;
+
+    /**
+     * Output file of each completed download, by URL.
+     */
+    private final Map<String, String> completed = new HashMap<String, String>();
+
+    /**
+     * Download manifest entries of the completed pages and blog posts, by identifier.
+     */
+    private final Map<String, JSONObject> pages = new HashMap<String, JSONObject>();
+
+    /**
+     * URLs found via links, in order.
+     */
+    private final Set<String> discovered = new LinkedHashSet<String>();
+
+    /**
+     * Whether records have been read from a previous download.
+     */
+    private final boolean resumed;
+
+    /**
+     * Read the journal of the previous download, if any, and open it to append records.
+     * @param file Journal file.
+     * @throws IOException If reading or opening the journal fails.
+     */
+    public DownloadJournal(File file) throws IOException
+    {
+        this.file = file;
+        boolean read = false;
+        if (file.isFile())
+        {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int start = 0;
+            for (int end = 0; end < bytes.length; end++)
+            {
+                if (bytes[end] != '\n')
+                {
+                    continue;
+                }
+                try
+                {
+                    read(new JSONObject(
+                        new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+                    read = true;
+                }
+                catch (JSONException e)
+                {
+                    // Only the last line can be incomplete, stop reading there
+                    break;
+                }
+                start = end + 1;
+            }
+            if (start < bytes.length)
+            {
+                // Drop the incomplete line, so that the next record starts on a line of its own
+                try (RandomAccessFile truncated = new RandomAccessFile(file, "rw"))
+                {
+                    truncated.setLength(start);
+                }
+            }
+        }
+        this.resumed = read;
+        this.output = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Apply a record read from the journal.
+     * @param record Record.
+     */
+    private void read(JSONObject record)
+    {
+        if (record.has("discovered"))
+        {
+            discovered.add(record.getString("discovered"));
+        }
+        else
+        {
+            completed.put(record.getString("completed"), record.getString("file"));
+            JSONObject page = record.optJSONObject("page");
+            if (page != null)
+            {
+                pages.put(record.getString("id"), page);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the journal has records of a previous download, which is hence resumed.
+     */
+    public boolean isResumed()
+    {
+        return resumed;
+    }
+
+    /**
+     * @return Download manifest entries of the pages and blog posts completed so far, by
+     * identifier.
+     */
+    public synchronized Map<String, JSONObject> getPages()
+    {
+        return new HashMap<String, JSONObject>(pages);
+    }
+
+    /**
+     * @return URLs found via links whose download has not completed, in the order they were found.
+     * @throws IOException If a URL is not valid.
+     */
+    public synchronized Set<URL> getPending() throws IOException
+    {
+        Set<URL> pending = new LinkedHashSet<URL>();
+        for (String url : discovered)
+        {
+            if (!completed.containsKey(url))
+            {
+                pending.add(new URL(url));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Check whether a download has completed, and its output file is still there.
+     * @param url Downloaded URL.
+     * @return Whether the download has completed.
+     */
+    public synchronized boolean isCompleted(URL url)
+    {
+        String completedFile = completed.get(url.toString());
+        return completedFile != null && new File(completedFile).isFile();
+    }
+
+    /**
+     * Record a URL found via a link.
+     * @param url URL.
+     * @throws IOException If writing the journal fails.
+     */
+    public synchronized void discovered(URL url) throws IOException
+    {
+        if (discovered.add(url.toString()))
+        {
+            write(new JSONObject().put("discovered", url.toString()));
+        }
+    }
+
+    /**
+     * Record a completed download.
+     * @param url Downloaded URL.
+     * @param outputFile Output file.
+     * @throws IOException If writing the journal fails.
+     */
+    public synchronized void completed(URL url, File outputFile) throws IOException
+    {
+        completed.put(url.toString(), outputFile.getPath());
+        write(new JSONObject().put("completed", url.toString()).put("file", outputFile.getPath()));
+    }
+
+    /**
+     * Record a completed download of a page or blog post.
+     * @param url Downloaded URL.
+     * @param id Page or blog post identifier.
+     * @param page Download manifest entry of the page or blog post, with its output file.
+     * @throws IOException If writing the journal fails.
+     */
+    public synchronized void completed(URL url, String id, JSONObject page) throws IOException
+    {
+        completed.put(url.toString(), page.getString("file"));
+        pages.put(id, page);
+        write(new JSONObject().put("completed", url.toString()).put("file", page.getString("file"))
+            .put("id", id).put("page", page));
+    }
+
+    /**
+     * Append a record, and flush it.
+     * @param record Record.
+     * @throws IOException If writing the journal fails.
+     */
+    private void write(JSONObject record) throws IOException
+    {
+        output.write((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        output.close();
+    }
+
+    /**
+     * Close and delete the journal, once the download has completed.
+     * @throws IOException If deleting the journal fails.
+     */
+    public synchronized void delete() throws IOException
+    {
+        output.close();
+        if (!file.delete())
+        {
+            throw new IOException("Cannot delete file " + file);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Exception thrown when a request is not sent, as its host is throttled or already has as many
+ * requests in flight as it accepts. The request should be retried after the given delay, for
+ * example by having the crawl frontier run its task again later.
+ */
+public class HostBusyException extends IOException
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Delay in milliseconds after which the request can be retried.
+     */
+    private final long delay;
+
+    /**
+     * Saves the attributes.
+     * @param url URL which has not been requested.
+     * @param delay Delay in milliseconds after which the request can be retried.
+     */
+    public HostBusyException(URL url, long delay)
+    {
+        super("Host busy, retrying in " + delay + " ms for URL: " + url);
+        this.delay = delay;
+    }
+
+    /**
+     * @return Delay in milliseconds after which the request can be retried.
+     */
+    public long getDelay()
+    {
+        return delay;
+    }
+}
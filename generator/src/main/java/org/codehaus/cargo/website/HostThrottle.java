@@ -0,0 +1,157 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adaptive per-host concurrency limit, using additive increase / multiplicative decrease (AIMD):
+ * each successful request raises the host's limit by about one request per round trip, each
+ * throttled (HTTP 429 or 503) request halves it and, if the server said when to retry, also blocks
+ * all requests to that host until then. Requests which got no response at all, for example
+ * because the connection was reset, leave the limit as is.<br>
+ * <br>
+ * Requests which cannot be sent yet are not waited for: the caller gets the delay after which to
+ * try again, so that the thread can run other tasks meanwhile.
+ */
+public class HostThrottle
+{
+    /**
+     * Delay in milliseconds after which to try again when a host has as many requests in flight
+     * as its limit.
+     */
+    private static final long BUSY_DELAY = 20;
+
+    /**
+     * State of one host.
+     */
+    private static class Host
+    {
+        /**
+         * Current concurrency limit.
+         */
+        private double limit;
+
+        /**
+         * Number of requests in flight.
+         */
+        private int inFlight;
+
+        /**
+         * Time (in milliseconds since the epoch) until which no request should be sent.
+         */
+        private long blockedUntil;
+    }
+
+    /**
+     * Maximum concurrency limit per host.
+     */
+    private final int maximum;
+
+    /**
+     * State of each host, indexed by host name.
+     */
+    private final Map<String, Host> hosts = new HashMap<String, Host>();
+
+    /**
+     * Saves the attributes.
+     * @param maximum Maximum (and initial) concurrency limit per host.
+     */
+    public HostThrottle(int maximum)
+    {
+        this.maximum = maximum;
+    }
+
+    /**
+     * Get the state of a host. Must be called while synchronized on this throttle.
+     * @param name Host name.
+     * @return State of the host.
+     */
+    private Host host(String name)
+    {
+        Host host = hosts.get(name);
+        if (host == null)
+        {
+            host = new Host();
+            host.limit = maximum;
+            hosts.put(name, host);
+        }
+        return host;
+    }
+
+    /**
+     * Start a request to a host, if the host is not blocked and below its limit.
+     * @param name Host name.
+     * @return <code>0</code> if the request can be sent, otherwise the delay in milliseconds after
+     * which to try again.
+     */
+    public synchronized long tryAcquire(String name)
+    {
+        Host host = host(name);
+        long blocked = host.blockedUntil - System.currentTimeMillis();
+        if (blocked > 0)
+        {
+            return blocked;
+        }
+        else if (host.inFlight >= (int) host.limit)
+        {
+            return BUSY_DELAY;
+        }
+        host.inFlight++;
+        return 0;
+    }
+
+    /**
+     * Signal that a request to a host has completed.
+     * @param name Host name.
+     * @param throttled Whether the host throttled the request, i.e. answered with HTTP 429 or 503.
+     * @param retryAfter Delay in milliseconds the host asked to wait before sending new requests,
+     * negative if the host did not say.
+     */
+    public synchronized void release(String name, boolean throttled, long retryAfter)
+    {
+        Host host = host(name);
+        host.inFlight--;
+        if (throttled)
+        {
+            host.limit = Math.max(1, host.limit / 2);
+            if (retryAfter > 0)
+            {
+                host.blockedUntil =
+                    Math.max(host.blockedUntil, System.currentTimeMillis() + retryAfter);
+            }
+        }
+        else
+        {
+            host.limit = Math.min(maximum, host.limit + 1 / host.limit);
+        }
+    }
+
+    /**
+     * Signal that a request to a host has ended without any response, for example when interrupted
+     * or when the connection was reset, which tells nothing about the host's load.
+     * @param name Host name.
+     */
+    public synchronized void cancel(String name)
+    {
+        host(name).inFlight--;
+    }
+}
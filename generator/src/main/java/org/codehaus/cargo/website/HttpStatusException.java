@@ -0,0 +1,85 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Exception thrown when the server answers with an HTTP error status.
+ */
+public class HttpStatusException extends IOException
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * HTTP status code.
+     */
+    private final int statusCode;
+
+    /**
+     * Delay in milliseconds after which the server said the request can be retried, negative if
+     * the server did not say.
+     */
+    private final long retryAfter;
+
+    /**
+     * Saves the attributes.
+     * @param url URL which has been requested.
+     * @param statusCode HTTP status code.
+     * @param retryAfter Delay in milliseconds after which the server said the request can be
+     * retried, negative if the server did not say.
+     */
+    public HttpStatusException(URL url, int statusCode, long retryAfter)
+    {
+        super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return HTTP status code.
+     */
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
+    /**
+     * @return Whether the server throttled the request, i.e. answered with HTTP 429 (too many
+     * requests) or 503 (service unavailable).
+     */
+    public boolean isThrottled()
+    {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /**
+     * @return Delay in milliseconds after which the server said the request can be retried,
+     * negative if the server did not say.
+     */
+    public long getRetryAfter()
+    {
+        return retryAfter;
+    }
+}
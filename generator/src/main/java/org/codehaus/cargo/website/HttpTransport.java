@@ -0,0 +1,297 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP transport for the downloads, sharing one pooled {@link HttpClient} (and hence its
+ * connections, multiplexed over HTTP/2 when the server supports it) across all downloads. The
+ * number of requests in flight to each host adapts to the throttling of that host, see
+ * {@link HostThrottle}; requests which cannot be sent yet fail with a {@link HostBusyException}
+ * instead of waiting.
+ */
+public class HttpTransport
+{
+    /**
+     * Connection timeout.
+     */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * HTTP client shared by all downloads.
+     */
+    private final HttpClient client;
+
+    /**
+     * Authorization header value, <code>null</code> if none.
+     */
+    private final String authorization;
+
+    /**
+     * Adaptive per-host concurrency limit.
+     */
+    private final HostThrottle throttle;
+
+    /**
+     * Creates the shared HTTP client.
+     * @param authorization Authorization header value for authenticated requests,
+     * <code>null</code> if none.
+     * @param maximumPerHost Maximum number of requests in flight to each host.
+     */
+    public HttpTransport(String authorization, int maximumPerHost)
+    {
+        this.authorization = authorization;
+        this.throttle = new HostThrottle(maximumPerHost);
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+    }
+
+    /**
+     * Build a GET request.
+     * @param url URL to get.
+     * @param authenticate Whether to send the authorization header.
+     * @return Request builder.
+     * @throws IOException If the URL is invalid.
+     */
+    private HttpRequest.Builder request(URL url, boolean authenticate) throws IOException
+    {
+        HttpRequest.Builder request;
+        try
+        {
+            request = HttpRequest.newBuilder(url.toURI()).GET();
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+        if (authenticate && authorization != null)
+        {
+            request.header("Authorization", authorization);
+        }
+        return request;
+    }
+
+    /**
+     * Send a GET request, having the response body handled by the given handler as it arrives,
+     * for example straight into a file.
+     * @param <T> Response body type.
+     * @param url URL to get.
+     * @param authenticate Whether to send the authorization header.
+     * @param headers Additional request headers, for example <code>Range</code>.
+     * @param handler Response body handler, only called for successful responses.
+     * @return Response, once its body has been handled completely.
+     * @throws IOException If the request fails, including with an HTTP error status, in which case
+     * the exception is a {@link HttpStatusException}, or if the host is busy, in which case the
+     * exception is a {@link HostBusyException}.
+     * @throws InterruptedException If interrupted while waiting for the response.
+     */
+    public <T> HttpResponse<T> send(URL url, boolean authenticate, Map<String, String> headers,
+        final HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException
+    {
+        HttpRequest.Builder request = request(url, authenticate);
+        for (Map.Entry<String, String> header : headers.entrySet())
+        {
+            request.header(header.getKey(), header.getValue());
+        }
+
+        String host = url.getHost();
+        acquire(url);
+        HttpResponse<T> response;
+        try
+        {
+            response = client.send(request.build(), new HttpResponse.BodyHandler<T>()
+            {
+                @Override
+                public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo info)
+                {
+                    if (info.statusCode() >= 400)
+                    {
+                        return HttpResponse.BodySubscribers.replacing(null);
+                    }
+                    return handler.apply(info);
+                }
+            });
+        }
+        catch (IOException | InterruptedException | RuntimeException e)
+        {
+            // No response, for example a connection reset: not a throttling signal
+            throttle.cancel(host);
+            throw e;
+        }
+        if (response.statusCode() >= 400)
+        {
+            HttpStatusException e = new HttpStatusException(url, response.statusCode(),
+                retryAfter(response.headers().firstValue("Retry-After")));
+            throttle.release(host, e.isThrottled(), e.getRetryAfter());
+            throw e;
+        }
+        throttle.release(host, false, -1);
+        return response;
+    }
+
+    /**
+     * Send a GET request.
+     * @param url URL to get.
+     * @param authenticate Whether to send the authorization header.
+     * @param compressed Whether to ask for a GZIP-compressed response, which is worth it for text
+     * content such as JSON but not for already compressed content such as images or ZIP files.
+     * @return Response body, uncompressed. The caller must close it.
+     * @throws IOException If the request fails, including with an HTTP error status, in which case
+     * the exception is a {@link HttpStatusException}, or if the host is busy, in which case the
+     * exception is a {@link HostBusyException}.
+     * @throws InterruptedException If interrupted while waiting for the response.
+     */
+    public InputStream get(URL url, boolean authenticate, boolean compressed)
+        throws IOException, InterruptedException
+    {
+        HttpRequest.Builder request = request(url, authenticate);
+        if (compressed)
+        {
+            request.header("Accept-Encoding", "gzip");
+        }
+
+        final String host = url.getHost();
+        acquire(url);
+        HttpResponse<InputStream> response;
+        try
+        {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        }
+        catch (IOException | InterruptedException | RuntimeException e)
+        {
+            // No response, for example a connection reset: not a throttling signal
+            throttle.cancel(host);
+            throw e;
+        }
+        InputStream body = response.body();
+        if (response.statusCode() >= 400)
+        {
+            body.close();
+            HttpStatusException e = new HttpStatusException(url, response.statusCode(),
+                retryAfter(response.headers().firstValue("Retry-After")));
+            throttle.release(host, e.isThrottled(), e.getRetryAfter());
+            throw e;
+        }
+        body = new FilterInputStream(body)
+        {
+            /**
+             * Whether the response body has already been closed.
+             */
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    if (!closed)
+                    {
+                        closed = true;
+                        throttle.release(host, false, -1);
+                    }
+                }
+            }
+        };
+        if ("gzip".equalsIgnoreCase(
+            response.headers().firstValue("Content-Encoding").orElse("")))
+        {
+            try
+            {
+                body = new GZIPInputStream(body);
+            }
+            catch (IOException e)
+            {
+                // Reading the GZIP header failed, the response body still needs to be released
+                body.close();
+                throw e;
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Start a request, if its host can take it now.
+     * @param url URL to get.
+     * @throws HostBusyException If the host cannot take the request yet.
+     */
+    private void acquire(URL url) throws HostBusyException
+    {
+        long delay = throttle.tryAcquire(url.getHost());
+        if (delay > 0)
+        {
+            throw new HostBusyException(url, delay);
+        }
+    }
+
+    /**
+     * Parse the value of a <code>Retry-After</code> header, which is either a number of seconds or
+     * an HTTP date.
+     * @param value Header value, if any.
+     * @return Delay in milliseconds, negative if there is no (valid) header.
+     */
+    static long retryAfter(Optional<String> value)
+    {
+        if (!value.isPresent())
+        {
+            return -1;
+        }
+        String retryAfter = value.get().trim();
+        try
+        {
+            return Long.parseLong(retryAfter) * 1000;
+        }
+        catch (NumberFormatException e)
+        {
+            try
+            {
+                ZonedDateTime date =
+                    ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0,
+                    date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            }
+            catch (DateTimeParseException ignored)
+            {
+                return -1;
+            }
+        }
+    }
+}
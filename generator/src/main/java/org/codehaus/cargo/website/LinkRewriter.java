@@ -0,0 +1,219 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the values of quoted attributes (such as <code>href</code> or <code>src</code>) in one
+ * scan of the text, handing each value to the handlers registered for its attribute.<br>
+ * <br>
+ * Like a regular expression such as <code>href="[^"]+"|href='[^']+'</code>, the attributes are
+ * found anywhere in the text (including, for example, <code>data-src</code>), values are not
+ * empty and end at the next quote of the same kind, and attributes with an unterminated value
+ * are left as they are. Rewritten values are always written between double quotes.
+ */
+public final class LinkRewriter
+{
+    /**
+     * Handler rewriting attribute values.
+     */
+    public interface Handler
+    {
+        /**
+         * Rewrite an attribute value.
+         * @param value Attribute value, without the quotes.
+         * @return New attribute value, or <code>null</code> if this handler does not apply to the
+         * value, in which case the next handler registered for the attribute is tried.
+         * @throws IOException If the value cannot be rewritten.
+         */
+        String rewrite(String value) throws IOException;
+    }
+
+    /**
+     * Builder for a {@link LinkRewriter}.
+     */
+    public static class Builder
+    {
+        /**
+         * Handlers of each attribute, by priority.
+         */
+        private final Map<String, List<Handler>> handlers =
+            new LinkedHashMap<String, List<Handler>>();
+
+        /**
+         * Register a handler for an attribute, after the handlers already registered for it.
+         * @param attribute Attribute name.
+         * @param handler Handler.
+         * @return This builder.
+         */
+        public Builder handler(String attribute, Handler handler)
+        {
+            List<Handler> attributeHandlers = handlers.get(attribute);
+            if (attributeHandlers == null)
+            {
+                attributeHandlers = new ArrayList<Handler>();
+                handlers.put(attribute, attributeHandlers);
+            }
+            attributeHandlers.add(handler);
+            return this;
+        }
+
+        /**
+         * @return Link rewriter with all handlers registered so far.
+         */
+        public LinkRewriter build()
+        {
+            String[] attributes = new String[handlers.size()];
+            Handler[][] attributeHandlers = new Handler[handlers.size()][];
+            int i = 0;
+            for (Map.Entry<String, List<Handler>> entry : handlers.entrySet())
+            {
+                attributes[i] = entry.getKey() + "=";
+                attributeHandlers[i] = entry.getValue().toArray(new Handler[0]);
+                i++;
+            }
+            return new LinkRewriter(attributes, attributeHandlers);
+        }
+    }
+
+    /**
+     * Attribute names, each followed by the equals sign.
+     */
+    private final String[] attributes;
+
+    /**
+     * Handlers of each attribute, by priority.
+     */
+    private final Handler[][] handlers;
+
+    /**
+     * Saves the attributes.
+     * @param attributes Attribute names, each followed by the equals sign.
+     * @param handlers Handlers of each attribute, by priority.
+     */
+    private LinkRewriter(String[] attributes, Handler[][] handlers)
+    {
+        this.attributes = attributes;
+        this.handlers = handlers;
+    }
+
+    /**
+     * @return Builder for a new link rewriter.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Rewrite all attribute values for which a handler applies.
+     * @param input Text to rewrite.
+     * @return Rewritten text.
+     * @throws IOException If a handler fails.
+     */
+    public String rewrite(String input) throws IOException
+    {
+        // Next occurrence of each attribute, -1 if there are no more
+        int[] next = new int[attributes.length];
+        for (int i = 0; i < attributes.length; i++)
+        {
+            next[i] = input.indexOf(attributes[i]);
+        }
+
+        StringBuilder output = null;
+        int copied = 0;
+        int position = 0;
+        while (true)
+        {
+            int best = -1;
+            for (int i = 0; i < attributes.length; i++)
+            {
+                if (next[i] >= 0 && next[i] < position)
+                {
+                    next[i] = input.indexOf(attributes[i], position);
+                }
+                if (next[i] >= 0 && (best == -1 || next[i] < next[best]))
+                {
+                    best = i;
+                }
+            }
+            if (best == -1)
+            {
+                break;
+            }
+
+            int start = next[best];
+            int valueStart = start + attributes[best].length() + 1;
+            position = start + 1;
+            if (valueStart > input.length())
+            {
+                continue;
+            }
+            char quote = input.charAt(valueStart - 1);
+            if (quote != '"' && quote != '\'')
+            {
+                continue;
+            }
+            int valueEnd = input.indexOf(quote, valueStart);
+            if (valueEnd <= valueStart)
+            {
+                continue;
+            }
+
+            String value = input.substring(valueStart, valueEnd);
+            String rewritten = null;
+            for (Handler handler : handlers[best])
+            {
+                rewritten = handler.rewrite(value);
+                if (rewritten != null)
+                {
+                    break;
+                }
+            }
+            if (rewritten == null)
+            {
+                continue;
+            }
+
+            if (output == null)
+            {
+                output = new StringBuilder(input.length());
+            }
+            output.append(input, copied, start);
+            output.append(attributes[best]);
+            output.append('"');
+            output.append(rewritten);
+            output.append('"');
+            copied = valueEnd + 1;
+            position = copied;
+        }
+        if (output == null)
+        {
+            return input;
+        }
+        output.append(input, copied, input.length());
+        return output.toString();
+    }
+}
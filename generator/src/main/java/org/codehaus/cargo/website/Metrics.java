@@ -0,0 +1,462 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Metrics of a run of the generator: counters, histograms of durations and the slowest
+ * downloads. All methods may be called by several threads at the same time; the counters and
+ * histograms are striped (with {@link LongAdder}s), so that threads do not contend on them.<br>
+ * <br>
+ * Each download and each stage of the rendering of a page is also a Java Flight Recorder event,
+ * recorded when running with <code>-XX:StartFlightRecording</code>.
+ */
+public class Metrics
+{
+    /**
+     * Number of slowest downloads to report.
+     */
+    private static final int SLOWEST_DOWNLOADS = 20;
+
+    /**
+     * Upper bounds of the histogram buckets, in milliseconds, the last bucket being unbounded.
+     */
+    private static final long[] BUCKETS = new long[]
+    {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000
+    };
+
+    /**
+     * Java Flight Recorder event for a download.
+     */
+    @Name("org.codehaus.cargo.website.Download")
+    @Label("Download")
+    @Category("Codehaus Cargo Website")
+    static class DownloadEvent extends Event
+    {
+        /**
+         * Kind of download.
+         */
+        @Label("Kind")
+        String kind;
+
+        /**
+         * Downloaded URL.
+         */
+        @Label("URL")
+        String url;
+
+        /**
+         * Number of downloaded bytes.
+         */
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        /**
+         * HTTP status code, <code>-1</code> if the download has failed without any.
+         */
+        @Label("Status")
+        int status;
+    }
+
+    /**
+     * Java Flight Recorder event for a stage of the rendering of a page.
+     */
+    @Name("org.codehaus.cargo.website.RenderStage")
+    @Label("Render Stage")
+    @Category("Codehaus Cargo Website")
+    static class RenderStageEvent extends Event
+    {
+        /**
+         * Stage.
+         */
+        @Label("Stage")
+        String stage;
+
+        /**
+         * Page being rendered.
+         */
+        @Label("Page")
+        String page;
+    }
+
+    /**
+     * Histogram of durations.
+     */
+    private static class Histogram
+    {
+        /**
+         * Number of durations in each bucket.
+         */
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+
+        /**
+         * Total of the durations, in nanoseconds.
+         */
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * Longest duration, in nanoseconds.
+         */
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Creates the buckets.
+         */
+        Histogram()
+        {
+            for (int i = 0; i < buckets.length; i++)
+            {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Record a duration.
+         * @param nanos Duration, in nanoseconds.
+         */
+        void record(long nanos)
+        {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket])
+            {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        /**
+         * @return Count, total, mean, maximum and estimated percentiles of the durations in
+         * milliseconds, as well as the number of durations in each non-empty bucket, in order (the
+         * last bucket having no upper bound).
+         */
+        JSONObject toJSON()
+        {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++)
+            {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(total.sum()));
+            json.put("meanMillis", count == 0 ? 0 : total.sum() / count / 1000000.0);
+            json.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(max.get()));
+            json.put("p50Millis", percentile(counts, count, 0.5));
+            json.put("p90Millis", percentile(counts, count, 0.9));
+            json.put("p99Millis", percentile(counts, count, 0.99));
+            JSONArray bucketCounts = new JSONArray();
+            for (int i = 0; i < counts.length; i++)
+            {
+                if (counts[i] > 0)
+                {
+                    JSONObject bucket = new JSONObject();
+                    if (i < BUCKETS.length)
+                    {
+                        bucket.put("upToMillis", BUCKETS[i]);
+                    }
+                    bucket.put("count", counts[i]);
+                    bucketCounts.put(bucket);
+                }
+            }
+            json.put("buckets", bucketCounts);
+            return json;
+        }
+
+        /**
+         * Estimate a percentile of the durations, as the upper bound of its bucket.
+         * @param counts Number of durations in each bucket.
+         * @param count Number of durations.
+         * @param percentile Percentile, between 0 and 1.
+         * @return Upper bound of the bucket of the percentile in milliseconds, or the longest
+         * duration if it is in the last bucket.
+         */
+        private long percentile(long[] counts, long count, double percentile)
+        {
+            long rank = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank)
+                {
+                    return Math.min(BUCKETS[i], TimeUnit.NANOSECONDS.toMillis(max.get()));
+                }
+            }
+            return TimeUnit.NANOSECONDS.toMillis(max.get());
+        }
+    }
+
+    /**
+     * Timer of a download.
+     */
+    public class Download
+    {
+        /**
+         * Java Flight Recorder event.
+         */
+        private final DownloadEvent event = new DownloadEvent();
+
+        /**
+         * Kind of download.
+         */
+        private final String kind;
+
+        /**
+         * Downloaded URL.
+         */
+        private final String url;
+
+        /**
+         * Time when the download started, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * Starts the timer.
+         * @param kind Kind of download.
+         * @param url Downloaded URL.
+         */
+        Download(String kind, String url)
+        {
+            this.kind = kind;
+            this.url = url;
+            event.begin();
+        }
+
+        /**
+         * Stop the timer and record the download.
+         * @param bytes Number of downloaded bytes.
+         * @param status HTTP status code, <code>-1</code> if the download has failed without any.
+         */
+        public void end(long bytes, int status)
+        {
+            long nanos = System.nanoTime() - start;
+            record("download." + kind, nanos);
+            increment("download." + kind + ".status." + status);
+            slowest.merge(url, nanos, Math::max);
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.kind = kind;
+                event.url = url;
+                event.bytes = bytes;
+                event.status = status;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Timer of a stage of the rendering of a page.
+     */
+    public class Stage
+    {
+        /**
+         * Java Flight Recorder event.
+         */
+        private final RenderStageEvent event = new RenderStageEvent();
+
+        /**
+         * Stage.
+         */
+        private final String stage;
+
+        /**
+         * Page being rendered.
+         */
+        private final String page;
+
+        /**
+         * Time when the stage started, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * Starts the timer.
+         * @param stage Stage.
+         * @param page Page being rendered.
+         */
+        Stage(String stage, String page)
+        {
+            this.stage = stage;
+            this.page = page;
+            event.begin();
+        }
+
+        /**
+         * Stop the timer and record the stage.
+         */
+        public void end()
+        {
+            record("render." + stage, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.stage = stage;
+                event.page = page;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Counters, by name.
+     */
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * Histograms, by name.
+     */
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * Longest download duration of each URL, in nanoseconds.
+     */
+    private final Map<String, Long> slowest = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Add to a counter.
+     * @param counter Counter name.
+     * @param value Value to add.
+     */
+    public void add(String counter, long value)
+    {
+        counters.computeIfAbsent(counter, name -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Increment a counter.
+     * @param counter Counter name.
+     */
+    public void increment(String counter)
+    {
+        add(counter, 1);
+    }
+
+    /**
+     * Get the value of a counter.
+     * @param counter Counter name.
+     * @return Value of the counter, <code>0</code> if it has never been added to.
+     */
+    public long get(String counter)
+    {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Record a duration in a histogram.
+     * @param histogram Histogram name.
+     * @param nanos Duration, in nanoseconds.
+     */
+    public void record(String histogram, long nanos)
+    {
+        histograms.computeIfAbsent(histogram, name -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * Start timing a download.
+     * @param kind Kind of download, for example <code>page</code> or <code>attachment</code>.
+     * @param url Downloaded URL.
+     * @return Timer of the download.
+     */
+    public Download download(String kind, String url)
+    {
+        return new Download(kind, url);
+    }
+
+    /**
+     * Start timing a stage of the rendering of a page.
+     * @param stage Stage, for example <code>parse</code> or <code>write</code>.
+     * @param page Page being rendered.
+     * @return Timer of the stage.
+     */
+    public Stage stage(String stage, String page)
+    {
+        return new Stage(stage, page);
+    }
+
+    /**
+     * @return Counters, histograms and slowest downloads, as JSON.
+     */
+    public JSONObject toJSON()
+    {
+        Map<String, Long> counterValues = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+        {
+            counterValues.put(counter.getKey(), counter.getValue().sum());
+        }
+        Map<String, JSONObject> histogramValues = new TreeMap<String, JSONObject>();
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet())
+        {
+            histogramValues.put(histogram.getKey(), histogram.getValue().toJSON());
+        }
+        List<Map.Entry<String, Long>> downloads =
+            new ArrayList<Map.Entry<String, Long>>(slowest.entrySet());
+        Collections.sort(downloads, new Comparator<Map.Entry<String, Long>>()
+        {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b)
+            {
+                return Long.compare(b.getValue(), a.getValue());
+            }
+        });
+        List<JSONObject> slowestDownloads = new ArrayList<JSONObject>();
+        for (Map.Entry<String, Long> download
+            : downloads.subList(0, Math.min(SLOWEST_DOWNLOADS, downloads.size())))
+        {
+            JSONObject json = new JSONObject();
+            json.put("url", download.getKey());
+            json.put("millis", TimeUnit.NANOSECONDS.toMillis(download.getValue()));
+            slowestDownloads.add(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("counters", counterValues);
+        json.put("histograms", histogramValues);
+        json.put("slowestDownloads", slowestDownloads);
+        return json;
+    }
+}
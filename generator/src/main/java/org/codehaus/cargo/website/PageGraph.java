@@ -0,0 +1,332 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Graph of the pages of the Web site: the page hierarchy (each page having a parent page) and the
+ * links between the pages, identified by their file names (without the <code>.html</code>
+ * extension).<br>
+ * <br>
+ * The ancestors of all pages are calculated once, before the pages are rendered, and shared with
+ * their descendants; the pages are taken in the order of their identifiers, so a cycle in the page
+ * hierarchy is always cut at the same page, and reported. The links are collected while rendering
+ * the pages, possibly by several threads at the same time, and give the pages which link to
+ * missing pages, the pages nothing links to and the pages which link to each page.
+ */
+public class PageGraph
+{
+    /**
+     * Page of the hierarchy.
+     */
+    public static class Page
+    {
+        /**
+         * Page identifier.
+         */
+        private final String id;
+
+        /**
+         * Page title.
+         */
+        private final String title;
+
+        /**
+         * Page file name.
+         */
+        private final String filename;
+
+        /**
+         * Parent page identifier, <code>null</code> for a top level page.
+         */
+        private final String parentId;
+
+        /**
+         * Saves the attributes.
+         * @param id Page identifier.
+         * @param title Page title.
+         * @param filename Page file name.
+         * @param parentId Parent page identifier, <code>null</code> for a top level page.
+         */
+        Page(String id, String title, String filename, String parentId)
+        {
+            this.id = id;
+            this.title = title;
+            this.filename = filename;
+            this.parentId = parentId;
+        }
+
+        /**
+         * @return Page title.
+         */
+        public String getTitle()
+        {
+            return title;
+        }
+
+        /**
+         * @return Page file name.
+         */
+        public String getFilename()
+        {
+            return filename;
+        }
+    }
+
+    /**
+     * Pages, by identifier.
+     */
+    private final Map<String, Page> pagesById = new HashMap<String, Page>();
+
+    /**
+     * Pages, by file name.
+     */
+    private final Map<String, Page> pagesByFilename = new HashMap<String, Page>();
+
+    /**
+     * Ancestors of the pages, top level page first, by page identifier; <code>null</code> until
+     * calculated.
+     */
+    private volatile Map<String, List<Page>> ancestors;
+
+    /**
+     * Cycles found in the page hierarchy, each with the titles of the pages in it.
+     */
+    private final List<List<String>> cycles = new ArrayList<List<String>>();
+
+    /**
+     * Pages linked to, by linking page.
+     */
+    private final Map<String, Set<String>> links = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * Add a page to the hierarchy. If several pages have the same file name, the last one wins.
+     * @param id Page identifier.
+     * @param title Page title.
+     * @param filename Page file name.
+     * @param parentId Parent page identifier, <code>null</code> for a top level page.
+     */
+    public synchronized void addPage(String id, String title, String filename, String parentId)
+    {
+        Page page = new Page(id, title, filename, parentId);
+        pagesById.put(id, page);
+        pagesByFilename.put(filename, page);
+        ancestors = null;
+    }
+
+    /**
+     * Calculate the ancestors of all pages, once all pages have been added. The pages are taken in
+     * the order of their identifiers, so that any cycle in the page hierarchy is cut at the same
+     * page whatever the order the ancestors are then looked up in.
+     */
+    public synchronized void calculateAncestors()
+    {
+        cycles.clear();
+        Map<String, List<Page>> calculated = new HashMap<String, List<Page>>();
+        for (String id : new TreeSet<String>(pagesById.keySet()))
+        {
+            getAncestors(pagesById.get(id), new LinkedHashSet<Page>(), calculated);
+        }
+        ancestors = calculated;
+    }
+
+    /**
+     * Get the ancestors of a page.
+     * @param filename Page file name.
+     * @return Ancestors of the page, top level page first. Empty if the page is not in the
+     * hierarchy.
+     * @throws IllegalStateException If the ancestors have not been calculated.
+     */
+    public List<Page> getAncestors(String filename)
+    {
+        // Read first, as it is written after the pages
+        Map<String, List<Page>> calculated = ancestors;
+        if (calculated == null)
+        {
+            throw new IllegalStateException("The ancestors of the pages have not been calculated");
+        }
+        Page page = pagesByFilename.get(filename);
+        if (page == null)
+        {
+            return Collections.emptyList();
+        }
+        return calculated.get(page.id);
+    }
+
+    /**
+     * Get the ancestors of a page, calculating these if not done yet.
+     * @param page Page.
+     * @param descendants Pages whose ancestors are being calculated, to detect cycles.
+     * @param calculated Ancestors calculated so far, by page identifier.
+     * @return Ancestors of the page, top level page first.
+     */
+    private List<Page> getAncestors(Page page, Set<Page> descendants,
+        Map<String, List<Page>> calculated)
+    {
+        List<Page> result = calculated.get(page.id);
+        if (result != null)
+        {
+            return result;
+        }
+        Page parent = page.parentId == null ? null : pagesById.get(page.parentId);
+        if (parent == null)
+        {
+            result = Collections.emptyList();
+        }
+        else if (!descendants.add(page) || descendants.contains(parent))
+        {
+            // Cut the cycle between this page and its parent
+            List<String> cycle = new ArrayList<String>();
+            boolean inCycle = false;
+            for (Page descendant : descendants)
+            {
+                inCycle |= descendant == parent;
+                if (inCycle)
+                {
+                    cycle.add(descendant.title);
+                }
+            }
+            cycles.add(cycle);
+            result = Collections.emptyList();
+        }
+        else
+        {
+            List<Page> parentAncestors = getAncestors(parent, descendants, calculated);
+            result = new ArrayList<Page>(parentAncestors.size() + 1);
+            result.addAll(parentAncestors);
+            result.add(parent);
+            result = Collections.unmodifiableList(result);
+        }
+        descendants.remove(page);
+        calculated.put(page.id, result);
+        return result;
+    }
+
+    /**
+     * @return Cycles found in the page hierarchy when calculating the ancestors, each with the
+     * titles of the pages in it.
+     */
+    public synchronized List<List<String>> getCycles()
+    {
+        return new ArrayList<List<String>>(cycles);
+    }
+
+    /**
+     * Add the links of a page.
+     * @param filename File name of the linking page.
+     * @param targets File names of the linked pages.
+     */
+    public void addLinks(String filename, Collection<String> targets)
+    {
+        Set<String> pageLinks = links.get(filename);
+        if (pageLinks == null)
+        {
+            links.putIfAbsent(filename, ConcurrentHashMap.<String>newKeySet());
+            pageLinks = links.get(filename);
+        }
+        pageLinks.addAll(targets);
+    }
+
+    /**
+     * Get the links to missing pages.
+     * @param existing File names of the existing pages.
+     * @return Missing pages linked to, by linking page.
+     */
+    public SortedMap<String, SortedSet<String>> getBrokenLinks(Set<String> existing)
+    {
+        SortedMap<String, SortedSet<String>> broken = new TreeMap<String, SortedSet<String>>();
+        for (Map.Entry<String, Set<String>> pageLinks : links.entrySet())
+        {
+            for (String target : pageLinks.getValue())
+            {
+                if (!existing.contains(target))
+                {
+                    SortedSet<String> targets = broken.get(pageLinks.getKey());
+                    if (targets == null)
+                    {
+                        targets = new TreeSet<String>();
+                        broken.put(pageLinks.getKey(), targets);
+                    }
+                    targets.add(target);
+                }
+            }
+        }
+        return broken;
+    }
+
+    /**
+     * Get the pages which are linked to by no other page.
+     * @param existing File names of the existing pages.
+     * @return Orphan pages.
+     */
+    public SortedSet<String> getOrphans(Set<String> existing)
+    {
+        Set<String> linked = new HashSet<String>();
+        for (Map.Entry<String, Set<String>> pageLinks : links.entrySet())
+        {
+            for (String target : pageLinks.getValue())
+            {
+                if (!target.equals(pageLinks.getKey()))
+                {
+                    linked.add(target);
+                }
+            }
+        }
+        SortedSet<String> orphans = new TreeSet<String>(existing);
+        orphans.removeAll(linked);
+        return orphans;
+    }
+
+    /**
+     * @return Linking pages, by linked page.
+     */
+    public SortedMap<String, SortedSet<String>> getInboundLinks()
+    {
+        SortedMap<String, SortedSet<String>> inbound = new TreeMap<String, SortedSet<String>>();
+        for (Map.Entry<String, Set<String>> pageLinks : links.entrySet())
+        {
+            for (String target : pageLinks.getValue())
+            {
+                SortedSet<String> sources = inbound.get(target);
+                if (sources == null)
+                {
+                    sources = new TreeSet<String>();
+                    inbound.put(target, sources);
+                }
+                sources.add(pageLinks.getKey());
+            }
+        }
+        return inbound;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Page template compiled into literal segments and placeholder slots, a placeholder being a
+ * dollar sign followed by letters (for example, <code>$title</code>).<br>
+ * <br>
+ * The rewrite rules are applied to the literal segments once, when compiling the template, and
+ * to the values of the placeholders each time the template is rendered. The rendered page is then
+ * read from the segments and values as they are, without ever being copied into one string.
+ */
+public final class PageTemplate
+{
+    /**
+     * Placeholder in a template.
+     */
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$([A-Za-z]+)");
+
+    /**
+     * Literal segments, one more than the placeholders.
+     */
+    private final String[] literals;
+
+    /**
+     * Placeholder names, each between two literal segments.
+     */
+    private final String[] placeholders;
+
+    /**
+     * Rewrite rules applied to the template.
+     */
+    private final RewriteEngine rewriter;
+
+    /**
+     * Compile a template.
+     * @param template Template.
+     * @param rewriter Rewrite rules applied to the rendered template.
+     */
+    public PageTemplate(String template, RewriteEngine rewriter)
+    {
+        List<String> literals = new ArrayList<String>();
+        List<String> placeholders = new ArrayList<String>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int start = 0;
+        while (matcher.find())
+        {
+            literals.add(rewriter.rewrite(template.substring(start, matcher.start())));
+            placeholders.add(matcher.group(1));
+            start = matcher.end();
+        }
+        literals.add(rewriter.rewrite(template.substring(start)));
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.placeholders = placeholders.toArray(new String[placeholders.size()]);
+        this.rewriter = rewriter;
+    }
+
+    /**
+     * Render the template.
+     * @param values Value of each placeholder, placeholders without a value being kept as they
+     * are.
+     * @return Reader for the rendered template.
+     */
+    public Reader render(Map<String, String> values)
+    {
+        final String[] parts = new String[literals.length + placeholders.length];
+        for (int i = 0; i < placeholders.length; i++)
+        {
+            parts[2 * i] = literals[i];
+            String value = values.get(placeholders[i]);
+            parts[2 * i + 1] = value == null ? "$" + placeholders[i] : rewriter.rewrite(value);
+        }
+        parts[parts.length - 1] = literals[literals.length - 1];
+
+        return new Reader()
+        {
+            /**
+             * Part being read.
+             */
+            private int part = 0;
+
+            /**
+             * Position in the part being read.
+             */
+            private int position = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length)
+            {
+                if (length == 0)
+                {
+                    return 0;
+                }
+                while (part < parts.length && position == parts[part].length())
+                {
+                    part++;
+                    position = 0;
+                }
+                if (part == parts.length)
+                {
+                    return -1;
+                }
+                int count = Math.min(length, parts[part].length() - position);
+                parts[part].getChars(position, position + count, buffer, offset);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close()
+            {
+                // Nothing to close
+            }
+        };
+    }
+}
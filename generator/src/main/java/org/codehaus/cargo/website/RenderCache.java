@@ -0,0 +1,152 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/**
+ * Persistent cache of the rendered pages. Each page is saved with a key, which is a SHA-256 hash
+ * of all inputs of its rendering: the inputs common to all pages (such as the version of the
+ * rendering rules and the template) and the inputs of the page itself (such as its source). A page
+ * only needs to be rendered again if its key has changed since the previous run.
+ */
+public class RenderCache
+{
+    /**
+     * Cache file.
+     */
+    private final File file;
+
+    /**
+     * Hash of the inputs common to all pages.
+     */
+    private final String common;
+
+    /**
+     * Keys of the previous run, by page.
+     */
+    private final Map<String, String> previous = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Keys of this run, by page.
+     */
+    private final Map<String, String> current = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Loads the keys of the previous run, if any.
+     * @param file Cache file.
+     * @param inputs Inputs common to all pages.
+     * @throws IOException If reading the cache file fails.
+     */
+    public RenderCache(File file, String... inputs) throws IOException
+    {
+        this.file = file;
+        this.common = hash(inputs);
+        if (file.isFile())
+        {
+            JSONObject saved = new JSONObject(
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            for (String page : saved.keySet())
+            {
+                previous.put(page, saved.getString(page));
+            }
+        }
+    }
+
+    /**
+     * Calculate the key of a page.
+     * @param inputs Inputs of the page.
+     * @return Key of the page.
+     */
+    public String key(String... inputs)
+    {
+        String[] all = new String[inputs.length + 1];
+        all[0] = common;
+        System.arraycopy(inputs, 0, all, 1, inputs.length);
+        return hash(all);
+    }
+
+    /**
+     * Remember the key of a page and check whether it needs to be rendered again.
+     * @param page Page.
+     * @param key Key of the page.
+     * @param output Rendered file of the page.
+     * @return <code>true</code> if the page has been rendered with the same key by the previous
+     * run and the rendered file is still there, <code>false</code> if it needs to be rendered.
+     */
+    public boolean isCached(String page, String key, File output)
+    {
+        current.put(page, key);
+        return key.equals(previous.get(page)) && output.isFile();
+    }
+
+    /**
+     * Save the keys of this run, which replace those of the previous run.
+     * @throws IOException If writing the cache file fails.
+     */
+    public void save() throws IOException
+    {
+        try (OutputStream output = new ChangeDetectingOutputStream(file))
+        {
+            output.write(new JSONObject(current).toString(4).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Calculate the SHA-256 hash of strings.
+     * @param inputs Strings.
+     * @return SHA-256 hash of the strings, in hexadecimal.
+     */
+    private static String hash(String... inputs)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        for (String input : inputs)
+        {
+            // Prefix each string with its length, so that different inputs never hash the same
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            digest.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+            digest.update(bytes);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
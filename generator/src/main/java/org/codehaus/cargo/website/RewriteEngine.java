@@ -0,0 +1,416 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled set of rewrite rules, each being either a literal replacement (like
+ * {@link String#replace(CharSequence, CharSequence)}) or a regular expression replacement (like
+ * {@link String#replaceAll(String, String)}).<br>
+ * <br>
+ * The rules are grouped in stages. All rules of a stage are applied in one scan of the text,
+ * which builds the output only once: at each point of the scan, the match starting first wins
+ * and, for matches starting at the same position, the rule added first wins. This is identical
+ * to applying the rules of the stage one after the other as long as no rule creates or removes
+ * matches for another rule of the same stage; rules which depend on the result of other rules
+ * must hence be put in a later stage.<br>
+ * <br>
+ * The next match of each rule is remembered until the scan goes past it, so that each rule only
+ * searches the text once. Literals are searched with {@link String#indexOf(String, int)}, whose
+ * vectorized implementation is faster than any automaton for the few literals of each stage.
+ * Regular expressions starting with <code>\s*</code> or <code>\s+</code> are searched without
+ * that prefix (so the regular expression engine can skip to the next candidate instead of trying
+ * every position) and the match is then extended backwards over the whitespace.
+ */
+public final class RewriteEngine
+{
+    /**
+     * Builder for a {@link RewriteEngine}.
+     */
+    public static class Builder
+    {
+        /**
+         * Stages built so far.
+         */
+        private final List<Stage> stages = new ArrayList<Stage>();
+
+        /**
+         * Rules of the current stage.
+         */
+        private List<Rule> rules = new ArrayList<Rule>();
+
+        /**
+         * Add a literal replacement to the current stage.
+         * @param target Text to replace.
+         * @param replacement Replacement text.
+         * @return This builder.
+         */
+        public Builder literal(String target, String replacement)
+        {
+            if (target.isEmpty())
+            {
+                throw new IllegalArgumentException("Literal rules cannot be empty");
+            }
+            rules.add(new Rule(target, null, -1, replacement));
+            return this;
+        }
+
+        /**
+         * Add a regular expression replacement to the current stage.
+         * @param regex Regular expression to replace.
+         * @param replacement Replacement text, which can refer to the captured groups using
+         * <code>$n</code> just like {@link Matcher#appendReplacement(StringBuffer, String)}.
+         * @return This builder.
+         */
+        public Builder regex(String regex, String replacement)
+        {
+            int leadingWhitespace = -1;
+            String pattern = regex;
+            if ((regex.startsWith("\\s*") || regex.startsWith("\\s+")) && regex.length() > 4
+                && LITERAL_START.indexOf(regex.charAt(3)) != -1
+                && "*?{".indexOf(regex.charAt(4)) == -1 && regex.indexOf('|') == -1)
+            {
+                // The rest starts with a mandatory character which is not whitespace, so all
+                // whitespace before it belongs to the prefix; and without alternatives the prefix
+                // applies to the whole pattern
+                leadingWhitespace = regex.charAt(2) == '*' ? 0 : 1;
+                pattern = regex.substring(3);
+            }
+            rules.add(new Rule(null, Pattern.compile(pattern), leadingWhitespace, replacement));
+            return this;
+        }
+
+        /**
+         * Start a new stage, whose rules apply to the result of the rules added so far.
+         * @return This builder.
+         */
+        public Builder stage()
+        {
+            if (!rules.isEmpty())
+            {
+                stages.add(new Stage(rules.toArray(new Rule[rules.size()])));
+                rules = new ArrayList<Rule>();
+            }
+            return this;
+        }
+
+        /**
+         * @return Rewrite engine with all stages added so far.
+         */
+        public RewriteEngine build()
+        {
+            stage();
+            return new RewriteEngine(new ArrayList<Stage>(stages));
+        }
+    }
+
+    /**
+     * One rewrite rule.
+     */
+    private static class Rule
+    {
+        /**
+         * Literal text to replace, <code>null</code> for a regular expression rule.
+         */
+        private final String literal;
+
+        /**
+         * Regular expression to replace, <code>null</code> for a literal rule. For regular
+         * expressions with a whitespace prefix, this is the regular expression without it.
+         */
+        private final Pattern pattern;
+
+        /**
+         * Minimum number of whitespace characters before the regular expression match, or
+         * <code>-1</code> if the regular expression has no whitespace prefix.
+         */
+        private final int leadingWhitespace;
+
+        /**
+         * Replacement text.
+         */
+        private final String replacement;
+
+        /**
+         * Saves the attributes.
+         * @param literal Literal text to replace, <code>null</code> for a regular expression rule.
+         * @param pattern Regular expression to replace, <code>null</code> for a literal rule.
+         * @param leadingWhitespace Minimum number of whitespace characters before the regular
+         * expression match, or <code>-1</code> if the regular expression has no whitespace prefix.
+         * @param replacement Replacement text.
+         */
+        Rule(String literal, Pattern pattern, int leadingWhitespace, String replacement)
+        {
+            this.literal = literal;
+            this.pattern = pattern;
+            this.leadingWhitespace = leadingWhitespace;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * Rules applied in one scan.
+     */
+    private static class Stage
+    {
+        /**
+         * Rules, by priority.
+         */
+        private final Rule[] rules;
+
+        /**
+         * Saves the attributes.
+         * @param rules Rules, by priority.
+         */
+        Stage(Rule[] rules)
+        {
+            this.rules = rules;
+        }
+
+        /**
+         * Apply the rules of this stage.
+         * @param input Text to rewrite.
+         * @return Rewritten text.
+         */
+        String rewrite(String input)
+        {
+            Matcher[] matchers = new Matcher[rules.length];
+            // Next match of each rule, -2 if not searched yet and -1 if there are no more
+            int[] starts = new int[rules.length];
+            int[] ends = new int[rules.length];
+            for (int i = 0; i < rules.length; i++)
+            {
+                if (rules[i].pattern != null)
+                {
+                    matchers[i] = rules[i].pattern.matcher(input);
+                }
+                starts[i] = -2;
+            }
+
+            StringBuilder output = null;
+            int copied = 0;
+            int position = 0;
+            while (position <= input.length())
+            {
+                int best = -1;
+                for (int i = 0; i < rules.length; i++)
+                {
+                    if (starts[i] == -2 || starts[i] >= 0 && starts[i] < position)
+                    {
+                        find(input, i, position, matchers, starts, ends);
+                    }
+                    if (starts[i] >= 0 && (best == -1 || starts[i] < starts[best]))
+                    {
+                        best = i;
+                    }
+                }
+                if (best == -1)
+                {
+                    break;
+                }
+
+                if (output == null)
+                {
+                    output = new StringBuilder(input.length());
+                }
+                output.append(input, copied, starts[best]);
+                Rule rule = rules[best];
+                if (rule.pattern == null)
+                {
+                    output.append(rule.replacement);
+                }
+                else
+                {
+                    appendReplacement(output, input, starts[best], matchers[best],
+                        rule.replacement);
+                }
+                copied = ends[best];
+                position = ends[best];
+                if (ends[best] == starts[best])
+                {
+                    // Empty match: keep the next character as is, like String.replaceAll does
+                    if (position < input.length())
+                    {
+                        output.append(input.charAt(position));
+                    }
+                    copied++;
+                    position++;
+                }
+            }
+            if (output == null)
+            {
+                return input;
+            }
+            if (copied < input.length())
+            {
+                output.append(input, copied, input.length());
+            }
+            return output.toString();
+        }
+
+        /**
+         * Find the next match of a rule.
+         * @param input Text to rewrite.
+         * @param i Index of the rule.
+         * @param position Position from which to search.
+         * @param matchers Matcher of each regular expression rule.
+         * @param starts Start of the next match of each rule, updated for the rule.
+         * @param ends End of the next match of each rule, updated for the rule.
+         */
+        private void find(String input, int i, int position, Matcher[] matchers, int[] starts,
+            int[] ends)
+        {
+            Rule rule = rules[i];
+            if (rule.pattern == null)
+            {
+                starts[i] = input.indexOf(rule.literal, position);
+                ends[i] = starts[i] + rule.literal.length();
+                return;
+            }
+            int from = position;
+            while (from <= input.length() && matchers[i].find(from))
+            {
+                int start = matchers[i].start();
+                if (rule.leadingWhitespace >= 0)
+                {
+                    while (start > position && isWhitespace(input.charAt(start - 1)))
+                    {
+                        start--;
+                    }
+                    if (matchers[i].start() - start < rule.leadingWhitespace)
+                    {
+                        from = matchers[i].start() + 1;
+                        continue;
+                    }
+                }
+                starts[i] = start;
+                ends[i] = matchers[i].end();
+                return;
+            }
+            starts[i] = -1;
+        }
+    }
+
+    /**
+     * Characters which, at the start of a regular expression, can only match themselves and hence
+     * never match whitespace.
+     */
+    private static final String LITERAL_START =
+        "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789<>\"'=/-_:;,!@#%&~`";
+
+    /**
+     * Rewrite stages, in order.
+     */
+    private final List<Stage> stages;
+
+    /**
+     * Saves the attributes.
+     * @param stages Rewrite stages, in order.
+     */
+    private RewriteEngine(List<Stage> stages)
+    {
+        this.stages = stages;
+    }
+
+    /**
+     * @return Builder for a new rewrite engine.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Apply all rules, stage after stage.
+     * @param input Text to rewrite.
+     * @return Rewritten text.
+     */
+    public String rewrite(String input)
+    {
+        String result = input;
+        for (Stage stage : stages)
+        {
+            result = stage.rewrite(result);
+        }
+        return result;
+    }
+
+    /**
+     * Whether a character matches <code>\s</code> in a regular expression.
+     * @param c Character.
+     * @return Whether the character is whitespace.
+     */
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Append the replacement for a regular expression match, with the same syntax as
+     * {@link Matcher#appendReplacement(StringBuffer, String)}: <code>$n</code> refers to a
+     * captured group and a backslash escapes the next character.
+     * @param output Output to append to.
+     * @param input Text being rewritten.
+     * @param start Start of the match, including any whitespace prefix.
+     * @param matcher Matcher positioned on the match.
+     * @param replacement Replacement text.
+     */
+    private static void appendReplacement(StringBuilder output, String input, int start,
+        Matcher matcher, String replacement)
+    {
+        for (int i = 0; i < replacement.length(); i++)
+        {
+            char c = replacement.charAt(i);
+            if (c == '\\' && i + 1 < replacement.length())
+            {
+                i++;
+                output.append(replacement.charAt(i));
+            }
+            else if (c == '$' && i + 1 < replacement.length()
+                && Character.isDigit(replacement.charAt(i + 1)))
+            {
+                i++;
+                int group = replacement.charAt(i) - '0';
+                while (i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))
+                    && group * 10 + replacement.charAt(i + 1) - '0' <= matcher.groupCount())
+                {
+                    i++;
+                    group = group * 10 + replacement.charAt(i) - '0';
+                }
+                if (group == 0)
+                {
+                    output.append(input, start, matcher.end());
+                }
+                else if (matcher.group(group) != null)
+                {
+                    output.append(matcher.group(group));
+                }
+            }
+            else
+            {
+                output.append(c);
+            }
+        }
+    }
+}
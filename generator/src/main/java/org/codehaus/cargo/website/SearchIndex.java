@@ -0,0 +1,362 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Inverted index of the pages of the Web site, searched by the browser without any server.<br>
+ * <br>
+ * The index is written as JSON files: <code>pages.json</code> has the file name, title and
+ * summary of each page, its position in the array being the page identifier, and each shard
+ * (<code>a.json</code> to <code>z.json</code>, <code>0.json</code> to <code>9.json</code> and
+ * <code>_.json</code> for the other characters) has the terms starting with its character, each
+ * with the identifiers of the pages containing it, each followed by the number of occurrences of
+ * the term in the title and text of the page. A search hence only loads the pages and the shards
+ * of its terms.<br>
+ * <br>
+ * The pages which have not changed keep their entries from the index of the previous run, whose
+ * shards are only read (and the index written) if any page has changed.<br>
+ * <br>
+ * Terms are the lower case sequences of letters and digits; the <code>search.html</code> page
+ * splits queries the same way.
+ */
+public class SearchIndex
+{
+    /**
+     * Maximum length of the summary of a page.
+     */
+    private static final int SUMMARY_LENGTH = 300;
+
+    /**
+     * Indexed page.
+     */
+    private static class Page
+    {
+        /**
+         * Page title.
+         */
+        private final String title;
+
+        /**
+         * Page summary.
+         */
+        private final String summary;
+
+        /**
+         * Number of occurrences of each term in the page.
+         */
+        private final Map<String, Integer> occurrences;
+
+        /**
+         * Saves the attributes.
+         * @param title Page title.
+         * @param summary Page summary.
+         * @param occurrences Number of occurrences of each term in the page.
+         */
+        Page(String title, String summary, Map<String, Integer> occurrences)
+        {
+            this.title = title;
+            this.summary = summary;
+            this.occurrences = occurrences;
+        }
+    }
+
+    /**
+     * Directory of the index.
+     */
+    private final File directory;
+
+    /**
+     * Pages indexed by the previous run, by file name, without their terms until these are
+     * needed.
+     */
+    private final Map<String, Page> previous = new HashMap<String, Page>();
+
+    /**
+     * Identifiers of the pages indexed by the previous run, by file name.
+     */
+    private final Map<String, Integer> previousIds = new HashMap<String, Integer>();
+
+    /**
+     * Indexed pages, by file name.
+     */
+    private final Map<String, Page> pages = new ConcurrentHashMap<String, Page>();
+
+    /**
+     * Whether pages have been added, as opposed to kept from the previous run.
+     */
+    private volatile boolean added = false;
+
+    /**
+     * Loads the pages indexed by the previous run, if any.
+     * @param directory Directory of the index.
+     * @throws IOException If reading the index fails.
+     */
+    public SearchIndex(File directory) throws IOException
+    {
+        this.directory = directory;
+        File pageFile = new File(directory, "pages.json");
+        if (pageFile.isFile())
+        {
+            JSONArray pageList = new JSONArray(read(pageFile));
+            for (int i = 0; i < pageList.length(); i++)
+            {
+                JSONArray page = pageList.getJSONArray(i);
+                previous.put(page.getString(0), new Page(page.getString(1), page.getString(2),
+                    new HashMap<String, Integer>()));
+                previousIds.put(page.getString(0), i);
+            }
+        }
+    }
+
+    /**
+     * Add a page to the index, replacing any page with the same file name. This method may be
+     * called by several threads at the same time.
+     * @param filename Page file name.
+     * @param title Page title.
+     * @param text Page text, without any markup.
+     */
+    public void addPage(String filename, String title, String text)
+    {
+        Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (String term : terms(title + " " + text))
+        {
+            Integer count = occurrences.get(term);
+            occurrences.put(term, count == null ? 1 : count + 1);
+        }
+        String summary = text.length() > SUMMARY_LENGTH
+            ? text.substring(0, SUMMARY_LENGTH) + " [...]" : text;
+        pages.put(filename, new Page(title, summary, occurrences));
+        added = true;
+    }
+
+    /**
+     * Keep a page as indexed by the previous run, which is only correct if neither the page nor
+     * the way pages are indexed have changed since. This method may be called by several threads
+     * at the same time.
+     * @param filename Page file name.
+     * @return <code>true</code> if the page has been kept, <code>false</code> if the previous run
+     * did not index it, in which case it needs to be added.
+     */
+    public boolean keepPage(String filename)
+    {
+        Page page = previous.get(filename);
+        if (page == null)
+        {
+            return false;
+        }
+        pages.put(filename, page);
+        return true;
+    }
+
+    /**
+     * Split a text into terms.
+     * @param text Text.
+     * @return Terms of the text, in order and including duplicates.
+     */
+    public static List<String> terms(String text)
+    {
+        List<String> terms = new ArrayList<String>();
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++)
+        {
+            boolean inTerm =
+                i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (inTerm && start == -1)
+            {
+                start = i;
+            }
+            else if (!inTerm && start != -1)
+            {
+                terms.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Get the shard of a term.
+     * @param term Term.
+     * @return Shard name.
+     */
+    static String shard(String term)
+    {
+        char first = term.charAt(0);
+        if (first >= 'a' && first <= 'z' || first >= '0' && first <= '9')
+        {
+            return String.valueOf(first);
+        }
+        return "_";
+    }
+
+    /**
+     * Write the index, with the pages added or kept. Files which have not changed are not
+     * written, and shards which are no longer needed are deleted.
+     * @return Number of files written or deleted.
+     * @throws IOException If writing the index fails.
+     */
+    public int write() throws IOException
+    {
+        if (!added && pages.keySet().equals(previous.keySet()))
+        {
+            return 0;
+        }
+        readPreviousTerms();
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        SortedMap<String, Page> sortedPages = new TreeMap<String, Page>(pages);
+        JSONArray pageList = new JSONArray();
+        Map<String, JSONObject> shards = new TreeMap<String, JSONObject>();
+        int id = 0;
+        for (Map.Entry<String, Page> page : sortedPages.entrySet())
+        {
+            pageList.put(new JSONArray().put(page.getKey()).put(page.getValue().title)
+                .put(page.getValue().summary));
+            for (Map.Entry<String, Integer> occurrence
+                : new TreeMap<String, Integer>(page.getValue().occurrences).entrySet())
+            {
+                String term = occurrence.getKey();
+                JSONObject shard = shards.get(shard(term));
+                if (shard == null)
+                {
+                    shard = new JSONObject();
+                    shards.put(shard(term), shard);
+                }
+                JSONArray postings = shard.optJSONArray(term);
+                if (postings == null)
+                {
+                    postings = new JSONArray();
+                    shard.put(term, postings);
+                }
+                postings.put(id).put(occurrence.getValue());
+            }
+            id++;
+        }
+
+        int changed = 0;
+        if (write(new File(directory, "pages.json"), pageList.toString()))
+        {
+            changed++;
+        }
+        for (Map.Entry<String, JSONObject> shard : shards.entrySet())
+        {
+            if (write(new File(directory, shard.getKey() + ".json"), shard.getValue().toString()))
+            {
+                changed++;
+            }
+        }
+        File[] files = directory.listFiles();
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (name.endsWith(".json") && !"pages.json".equals(name)
+                && !shards.containsKey(name.substring(0, name.length() - 5)))
+            {
+                if (!file.delete())
+                {
+                    throw new IOException("Cannot delete file " + file);
+                }
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Read the terms of the pages indexed by the previous run from the shards.
+     * @throws IOException If reading the shards fails.
+     */
+    private void readPreviousTerms() throws IOException
+    {
+        if (previous.isEmpty())
+        {
+            return;
+        }
+        Page[] pagesById = new Page[previous.size()];
+        for (Map.Entry<String, Integer> previousId : previousIds.entrySet())
+        {
+            pagesById[previousId.getValue()] = previous.get(previousId.getKey());
+        }
+        File[] files = directory.listFiles();
+        for (File file : files)
+        {
+            if (file.getName().endsWith(".json") && !"pages.json".equals(file.getName()))
+            {
+                JSONObject shard = new JSONObject(read(file));
+                for (String term : shard.keySet())
+                {
+                    JSONArray postings = shard.getJSONArray(term);
+                    for (int i = 0; i < postings.length(); i += 2)
+                    {
+                        pagesById[postings.getInt(i)].occurrences.put(term, postings.getInt(i + 1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a file of the index.
+     * @param file File.
+     * @return File content.
+     * @throws IOException If reading the file fails.
+     */
+    private static String read(File file) throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a file of the index, if its content changes.
+     * @param file File.
+     * @param content File content.
+     * @return Whether the file has changed.
+     * @throws IOException If writing the file fails.
+     */
+    private static boolean write(File file, String content) throws IOException
+    {
+        ChangeDetectingOutputStream output = new ChangeDetectingOutputStream(file);
+        try (OutputStream stream = output)
+        {
+            stream.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return output.isChanged();
+    }
+}
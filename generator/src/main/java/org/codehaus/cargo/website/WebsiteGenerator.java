@@ -23,13 +23,16 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
@@ -37,35 +40,56 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.CDataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
 
 /**
  * Java application which generates the Codehaus Cargo Web site based on the Confluence wiki.
  */
-public class WebsiteGenerator implements Runnable
+public class WebsiteGenerator implements CrawlFrontier.Task
 {
     /**
      * Authorization string, Base64, for the API calls.
      */
     private static String confluenceAuthentication;
 
+    /**
+     * HTTP transport shared by all downloads.
+     */
+    private static HttpTransport transport;
+
+    /**
+     * Attachment downloader, resuming interrupted downloads and caching the attachments.
+     */
+    private static AttachmentDownloader attachmentDownloader;
+
     /**
      * Wiki pages (original extracts)
      */
@@ -82,6 +106,24 @@ public class WebsiteGenerator implements Runnable
     private static Map<String, String> blogpostIdentifiers =
         Collections.synchronizedMap(new HashMap<String, String>());
 
+    /**
+     * Download manifest, i.e. the version, title and output file of each downloaded page or blog
+     * post, indexed by Confluence identifier.
+     */
+    private static Map<String, JSONObject> manifest =
+        Collections.synchronizedMap(new HashMap<String, JSONObject>());
+
+    /**
+     * Download manifest of the previous download, indexed by Confluence identifier.
+     */
+    private static Map<String, JSONObject> previousManifest =
+        Collections.synchronizedMap(new HashMap<String, JSONObject>());
+
+    /**
+     * Pages and blog posts which have not changed since the previous download.
+     */
+    private static Set<URL> unchanged = Collections.synchronizedSet(new HashSet<URL>());
+
     /**
      * Any exceptions that happened during the asynchronous downloads.
      */
@@ -89,14 +131,34 @@ public class WebsiteGenerator implements Runnable
         Collections.synchronizedMap(new HashMap<URL, Throwable>());
 
     /**
-     * Downloaded amount in bytes (regularly reset), to calculate speed.
+     * Journal of the download, to resume it if it fails.
+     */
+    private static DownloadJournal journal;
+
+    /**
+     * Crawl frontier, which executes the downloads and keeps track of the outstanding ones.
      */
-    private static long speed = 0;
+    private static CrawlFrontier frontier;
 
     /**
-     * Downloaded amount in bytes.
+     * Time when the download started.
      */
-    private static long size = 0;
+    private static long downloadStart;
+
+    /**
+     * Time when the download progress was last reported.
+     */
+    private static long lastProgress;
+
+    /**
+     * Downloaded amount in bytes when the download progress was last reported.
+     */
+    private static long lastProgressSize = 0;
+
+    /**
+     * Metrics of this run.
+     */
+    private static final Metrics METRICS = new Metrics();
 
     /**
      * Whether the download attachments.
@@ -104,17 +166,437 @@ public class WebsiteGenerator implements Runnable
     private static final boolean DOWNLOAD_ATTACHMENTS =
         Boolean.parseBoolean(System.getProperty("cargo.downloadAttachments", "true"));
 
+    /**
+     * Whether to only download the pages and blog posts which have changed since the previous
+     * download, based on the version numbers saved in the download manifest.
+     */
+    private static final boolean INCREMENTAL_DOWNLOAD =
+        Boolean.parseBoolean(System.getProperty("cargo.incrementalDownload", "false"));
+
+    /**
+     * Whether to resume the previous download if it has not completed, based on its journal,
+     * instead of starting over.
+     */
+    private static final boolean RESUME_DOWNLOAD =
+        Boolean.parseBoolean(System.getProperty("cargo.resumeDownload", "true"));
+
+    /**
+     * Whether to run the downloads on virtual threads, which is only supported from Java 21
+     * onwards; on earlier Java versions a pool of platform threads is used.
+     */
+    private static final boolean VIRTUAL_THREADS =
+        Boolean.parseBoolean(System.getProperty("cargo.virtualThreads", "false"));
+
+    /**
+     * Maximum number of downloads running at the same time.
+     */
+    private static final int DOWNLOAD_CONCURRENCY =
+        Integer.parseInt(System.getProperty("cargo.downloadConcurrency", "4"));
+
+    /**
+     * Maximum number of attachment downloads running at the same time. Pages and blog posts are
+     * downloaded before any attachment anyway; setting this lower than the download concurrency
+     * also keeps downloads free for these, at the cost of fewer parallel attachment downloads.
+     */
+    private static final int ATTACHMENT_CONCURRENCY = Integer.parseInt(System.getProperty(
+        "cargo.attachmentConcurrency", Integer.toString(DOWNLOAD_CONCURRENCY)));
+
+    /**
+     * Whether to save the raw JSON of the downloaded pages and blog posts in the
+     * <code>target/temp</code> directory, for debugging. Otherwise, the JSON is parsed directly
+     * from the HTTP response.
+     */
+    private static final boolean KEEP_RAW_JSON =
+        Boolean.parseBoolean(System.getProperty("cargo.keepRawJson", "false"));
+
+    /**
+     * Number of pages rendered in parallel when generating the Web site, by default the number of
+     * available processors. Use <code>1</code> to render the pages one at a time.
+     */
+    private static final int RENDER_PARALLELISM = Integer.parseInt(System.getProperty(
+        "cargo.renderParallelism", Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+    /**
+     * Whether to only render the pages whose source, template, navigation or rendering rules have
+     * changed since the previous run, based on the keys saved in the render cache.
+     */
+    private static final boolean RENDER_CACHE =
+        Boolean.parseBoolean(System.getProperty("cargo.renderCache", "true"));
+
+    /**
+     * Whether to write the navigation once, as a fragment loaded by each page, instead of in each
+     * page. Pages loaded without JavaScript then link to the navigation page instead.
+     */
+    private static final boolean SHARED_NAVIGATION =
+        Boolean.parseBoolean(System.getProperty("cargo.sharedNavigation", "false"));
+
+    /**
+     * Version of the rendering rules, part of the render cache keys. Increase it whenever the
+     * rules or the search index terms change, so that the pages rendered with the previous rules
+     * are rendered (and indexed) again.
+     */
+    private static final int RENDER_RULES_VERSION = 1;
+
+    /**
+     * URL of Atlassian Confluence, which the downloaded pages link to.
+     */
+    private static final String PUBLIC_CONFLUENCE_URL = "https://codehaus-cargo.atlassian.net";
+
+    /**
+     * URL to download the Atlassian Confluence content from, by default the public one; for
+     * example, a local stand-in of Atlassian Confluence when benchmarking the download.
+     */
+    private static final String CONFLUENCE_URL =
+        System.getProperty("cargo.confluenceUrl", PUBLIC_CONFLUENCE_URL);
+
+    /**
+     * URL at which the Web site is published.
+     */
+    private static final String WEBSITE_URL = "https://codehaus-cargo.github.io/cargo/";
+
+    /**
+     * Name of the template in the page graph, the links of the template being on every page.
+     */
+    private static final String TEMPLATE_PAGE = "cargo-template";
+
+    /**
+     * Name of the search page, which is not in the search index.
+     */
+    private static final String SEARCH_PAGE = "Search";
+
+    /**
+     * Rewrite rules for the page sources, before merging these with the template.
+     */
+    static final RewriteEngine SOURCE_REWRITER = RewriteEngine.builder()
+        .literal("http://repo.maven", "https://repo.maven")
+        .literal("http://repo1.maven", "https://repo.maven")
+        .regex("<script type=\"syntaxhighlighter\"[^>]+><\\!\\[CDATA\\[", "<pre>")
+        .literal("]]></script>", "</pre>")
+        .regex("<div id=\"jira-issues-\\d*\"", "<div")
+        .regex("\\s+class=\"legacy-color-text-[^\"]+\"", "")
+        // Once the legacy colours are gone, some tags have no more attributes to remove
+        .stage()
+        .literal(" style=\"text-decoration: none;\"", "")
+        .literal("<ol start=\"1\"", "<ol")
+        .stage()
+        .literal("<span>", "")
+        .build();
+
+    /**
+     * Rewrite rules for the pages merged with the template.
+     */
+    static final RewriteEngine TEMPLATE_REWRITER = RewriteEngine.builder()
+        .regex("\\s*data-[^=\\s]+=\"[^\"]+\"", "")
+        .regex("\\s*id=\"refresh-[^\"]+\"", "")
+        .literal(" data-macro-id=\"\"", "")
+        // The local identifiers are only next to the tag name once the data attributes are gone
+        .stage()
+        .regex("(<\\w+)\\s+local-id=\"\\w+\"", "$1")
+        .stage()
+        .literal(" class=\"external-link\"", "")
+        .literal(" rel=\"nofollow\"", "")
+        .literal(" class=\"conf-macro output-inline\"", "")
+        .literal("http://jira.codehaus.org/browse/CARGO-",
+            "https://codehaus-cargo.atlassian.net/browse/CARGO-")
+        .literal("https://jira.codehaus.org/browse/CARGO-",
+            "https://codehaus-cargo.atlassian.net/browse/CARGO-")
+        .literal("src=\"https://codehaus-cargo.semaphoreci.com/badges/",
+            "id=\"ci-status-image\" src=\"https://codehaus-cargo.semaphoreci.com/badges/")
+        // The links and notes below only match once their other attributes are gone
+        .stage()
+        .literal("<a href=\"http://java.sun.com\">java.sun.com</a>", "java.sun.com")
+        .literal("<a href=\"http://java.io\">java.io</a>", "java.io")
+        .literal("<div class=\"confluence-information-macro confluence-information-macro-note "
+            + "conf-macro output-block\"><span class=\"aui-icon aui-icon-small "
+            + "aui-iconfont-warning confluence-information-macro-icon\"> </span><div "
+            + "class=\"confluence-information-macro-body\"><p>This page / section has been "
+            + "automatically generated by Cargo's build. Do not edit it directly as it'll "
+            + "be overwritten next time it's generated again.</p></div></div>", "")
+        .literal("<div class=\"confluence-information-macro confluence-information-macro-note "
+            + "conf-macro output-block\"><span class=\"aui-icon aui-icon-small "
+            + "aui-iconfont-warning confluence-information-macro-icon\"> </span><div "
+            + "class=\"confluence-information-macro-body\"><p>This page has been "
+            + "automatically generated by Cargo's build. Do not edit it directly as it'll "
+            + "be overwritten next time it's generated again.</p></div></div>", "")
+        .build();
+
+    /**
+     * Rewrite rules for the generated HTML.
+     */
+    static final RewriteEngine HTML_REWRITER = RewriteEngine.builder()
+        .regex("\\s*<p>\\s*</p>", "")
+        // Removing empty paragraphs can join text around them
+        .stage()
+        .literal("<p>&nbsp; <a", "<p><a")
+        .literal("&nbsp;<code>", " <code>")
+        .literal("\u201C", "\"")
+        .literal("\u201D", "\"")
+        .literal("\u2019", "'")
+        // A code element after a non-breaking space can start with a word break as well
+        .stage()
+        .literal("<code><wbr>", "<code>")
+        .literal("<wbr></code>", "</code>")
+        .build();
+
+    /**
+     * Rewrite rules for the page bodies, before rewriting their links.
+     */
+    static final RewriteEngine BODY_REWRITER = RewriteEngine.builder()
+        .regex("(?s)<span [^>]*class=\"logoBlock\"[^>]*>(.*?)<\\/span>", "")
+        // Atlassian replaced most emojis with UTF-8 on December 2022, but forgot some
+        .literal(":cross_mark:", "\u274C")
+        .literal(":check_mark:", "\u2705")
+        .literal(":green_star:", "\u2B50")
+        .regex("<img [^>]*alt=\"\\(thumbs up\\)\"[^>]*>", "\uD83D\uDC4D")
+        .regex("<img [^>]*alt=\"\\(thumbs down\\)\"[^>]*>", "\uD83D\uDC4E")
+        // The Home page is special
+        .literal("href='/wiki/spaces/CARGO'", "href='Home.html'")
+        .literal("href=\"/wiki/spaces/CARGO\"", "href=\"Home.html\"")
+        // Ignore Gravatar images
+        .regex("<img [^>]*src=\"https://secure.gravatar.com/avatar/[^\"]*\"[^>]*>", "")
+        .build();
+
+    /**
+     * URLs of the pages and attachments found via the links of the page body being rewritten by
+     * the current thread, saved in the download manifest so that these are still downloaded when
+     * the page has not changed.
+     */
+    private static final ThreadLocal<Set<String>> PAGE_LINKS = new ThreadLocal<Set<String>>();
+
+    /**
+     * Rewrites the links of the page bodies and submits the downloads of the pages and attachments
+     * these refer to. Links to other pages of the CARGO space become links to the generated HTML
+     * files, links to attachments become links to the downloaded attachments and other links to
+     * Atlassian Confluence become absolute; images become downloaded attachments as well.
+     */
+    static final LinkRewriter LINK_REWRITER = LinkRewriter.builder()
+        .handler("href", new LinkRewriter.Handler()
+        {
+            @Override
+            public String rewrite(String filename) throws IOException
+            {
+                int wiki = filename.indexOf("/wiki/");
+                if (wiki == -1 || filename.lastIndexOf("/CARGO/", filename.length() - 8) < wiki + 7)
+                {
+                    return null;
+                }
+                if (filename.startsWith("/wiki/spaces/CARGO/pages/"))
+                {
+                    String identifier = filename.substring(0, filename.lastIndexOf('/'));
+                    identifier = identifier.substring(identifier.lastIndexOf('/') + 1);
+                    if (identifier.matches("-?\\d+"))
+                    {
+                        String pageUrl = PUBLIC_CONFLUENCE_URL + "/wiki/api/v2/pages/"
+                            + identifier + "?body-format=view";
+                        if (submitLink(pageUrl))
+                        {
+                            System.out.println("    => Found new page to handle: " + pageUrl);
+                        }
+                    }
+                }
+                String page = filename.substring(filename.lastIndexOf('/') + 1);
+                int hash = page.indexOf('#');
+                String anchor = "";
+                if (hash != -1)
+                {
+                    anchor = page.substring(hash);
+                    page = page.substring(0, hash);
+                }
+                if ("overview".equals(page))
+                {
+                    page = "Home";
+                }
+                if (blogpostIdentifiers.containsKey(page))
+                {
+                    page = blogpostIdentifiers.get(page);
+                }
+                page = page.replace("%21", "").replace("%2C", "").replace("%3A", "");
+                return page + ".html" + anchor;
+            }
+        })
+        .handler("href", new LinkRewriter.Handler()
+        {
+            @Override
+            public String rewrite(String attachment) throws IOException
+            {
+                String prefix = "https://codehaus-cargo.atlassian.net/wiki/download/attachments/";
+                if (attachment.startsWith("/"))
+                {
+                    attachment = "https://codehaus-cargo.atlassian.net" + attachment;
+                }
+                if (!attachment.startsWith(prefix) || attachment.length() == prefix.length())
+                {
+                    return null;
+                }
+                if (DOWNLOAD_ATTACHMENTS)
+                {
+                    submitLink(attachment);
+                }
+                int questionMark = attachment.lastIndexOf('?');
+                if (questionMark != -1)
+                {
+                    return "attachments"
+                        + attachment.substring(attachment.lastIndexOf('/'), questionMark);
+                }
+                return "attachments" + attachment.substring(attachment.lastIndexOf('/'));
+            }
+        })
+        .handler("href", new LinkRewriter.Handler()
+        {
+            @Override
+            public String rewrite(String link)
+            {
+                int start = 0;
+                while (start < link.length() && " \t\n\u000B\f\r".indexOf(link.charAt(start)) != -1)
+                {
+                    start++;
+                }
+                if (!link.startsWith("/wiki/", start) || link.length() == start + 6)
+                {
+                    return null;
+                }
+                return "https://codehaus-cargo.atlassian.net" + link.trim();
+            }
+        })
+        .handler("src", new LinkRewriter.Handler()
+        {
+            @Override
+            public String rewrite(String attachment) throws IOException
+            {
+                if (attachment.startsWith("https://codehaus-cargo.semaphoreci.com")
+                    || attachment.startsWith(
+                        "https://codehaus-cargo.atlassian.net/wiki/download/thumbnails"))
+                {
+                    return attachment;
+                }
+                attachment = attachment.replace("&amp;", "&");
+                if ("http://www.codehaus.org/newtest.gif".equals(attachment))
+                {
+                    attachment = "blank.gif";
+                }
+                else if (attachment.startsWith("/"))
+                {
+                    attachment = "https://codehaus-cargo.atlassian.net" + attachment;
+                }
+                int questionMark = attachment.indexOf('?');
+                if (questionMark != -1)
+                {
+                    attachment = attachment.substring(0, questionMark);
+                }
+                if (attachment.endsWith("default.png"))
+                {
+                    attachment = "blank.gif";
+                }
+                if (!attachment.endsWith("blank.gif"))
+                {
+                    submitLink(attachment);
+                }
+                return "attachments/" + attachment.substring(attachment.lastIndexOf('/') + 1);
+            }
+        })
+        .build();
+
+    /**
+     * Marker for the word breaks in the code elements. Jsoup replaces null characters when
+     * parsing, so the text of the documents never contains any.
+     */
+    private static final String WORD_BREAK = "\u0000";
+
+    /**
+     * Rules for the parsed pages.
+     */
+    static final DocumentTransformer DOCUMENT_TRANSFORMER = DocumentTransformer.builder()
+        // Allow certain characters (dots, equal signs, etc.) act as whitespace in
+        // <code> elements inside tables, so page widths remain "reasonable"
+        .rule(new DocumentTransformer.Rule()
+        {
+            @Override
+            public boolean apply(Element element)
+            {
+                if (!"code".equals(element.normalName()))
+                {
+                    return false;
+                }
+                Element table = element.parent();
+                while (table != null && !table.hasClass("confluenceTable"))
+                {
+                    table = table.parent();
+                }
+                if (table == null)
+                {
+                    return false;
+                }
+                StringBuilder text = new StringBuilder();
+                for (Node child : element.childNodes())
+                {
+                    if (!(child instanceof TextNode) || child instanceof CDataNode)
+                    {
+                        // Only the code elements with nothing but text get word breaks
+                        return false;
+                    }
+                    text.append(((TextNode) child).getWholeText());
+                }
+                String[] parts = text.toString()
+                    .replace(".", "." + WORD_BREAK)
+                    .replace("." + WORD_BREAK + "*", ".")
+                    .replace("." + WORD_BREAK + "." + WORD_BREAK + "." + WORD_BREAK, "...")
+                    .replace("(", WORD_BREAK + "(")
+                    .replace("=", "=" + WORD_BREAK)
+                    .replace(">", ">" + WORD_BREAK)
+                    .replace("</", WORD_BREAK + "</")
+                    .split(WORD_BREAK, -1);
+                if (parts.length > 1)
+                {
+                    element.empty();
+                    for (int i = 0; i < parts.length; i++)
+                    {
+                        if (i > 0)
+                        {
+                            element.appendElement("wbr");
+                        }
+                        if (!parts[i].isEmpty())
+                        {
+                            element.appendText(parts[i]);
+                        }
+                    }
+                }
+                return false;
+            }
+        })
+        .rule(new DocumentTransformer.Rule()
+        {
+            @Override
+            public boolean apply(Element element)
+            {
+                return element.hasClass("jim-sortable-dark-layout")
+                    || element.hasClass("refresh-issues-bottom")
+                    || element.hasClass("refresh-macro");
+            }
+        })
+        .build();
+
     /**
      * Multi-thread executor for parallel downloads.
      */
-    private static final ScheduledThreadPoolExecutor CONTENT_DOWNLOADERS =
-        new ScheduledThreadPoolExecutor(4);
+    private static final ExecutorService CONTENT_DOWNLOADERS =
+        CrawlFrontier.createExecutor(VIRTUAL_THREADS, DOWNLOAD_CONCURRENCY);
 
     /**
      * Number of retries to Atlassian Confluence APIs.
      */
     private static final int NUMBER_RETRIES = 3;
 
+    /**
+     * Number of retries to Atlassian Confluence APIs when these throttle the requests.
+     */
+    private static final int NUMBER_THROTTLED_RETRIES = 10;
+
+    /**
+     * Maximum delay in milliseconds before retrying a throttled request, if Atlassian Confluence
+     * APIs did not say how long to wait.
+     */
+    private static final long MAXIMUM_THROTTLED_DELAY = 60000;
+
     /**
      * Download the content and parse (i.e., generate the "full" HTML content)
      * @param args Not used.
@@ -125,20 +607,23 @@ public class WebsiteGenerator implements Runnable
         String confluenceCredentialsPath = System.getProperty("cargo.confluenceCredentialsPath");
         if (confluenceCredentialsPath != null && confluenceCredentialsPath.trim().length() > 0)
         {
-            try (InputStream input = new FileInputStream(confluenceCredentialsPath.trim()))
+            connect(confluenceCredentialsPath.trim());
+        }
+        try
+        {
+            if (WebsiteGenerator.transport != null)
             {
-                Properties confluenceCredentials = new Properties();
-                confluenceCredentials.load(input);
-                String userInfo =
-                    confluenceCredentials.getProperty("cargo.confluence.username") + ":"
-                        + confluenceCredentials.getProperty("cargo.confluence.apiKey");
-                WebsiteGenerator.confluenceAuthentication = "Basic "
-                    + Base64.getEncoder().encodeToString(
-                        userInfo.getBytes(StandardCharsets.UTF_8));
+                download();
             }
-            download();
+            parse();
+        }
+        finally
+        {
+            // Also written if the run fails, as the metrics then tell where it got stuck
+            File metricsFile = new File("target", "metrics.json");
+            writeFile(metricsFile, METRICS.toJSON().toString(4));
+            System.out.println("Metrics written to " + metricsFile.getAbsolutePath());
         }
-        parse();
     }
 
     /**
@@ -147,7 +632,7 @@ public class WebsiteGenerator implements Runnable
      * @return Filename, i.e. the page title with various characters filtered out.
      * @throws UnsupportedEncodingException Should not be thrown.
      */
-    private static String toFilename(String title) throws UnsupportedEncodingException
+    static String toFilename(String title) throws UnsupportedEncodingException
     {
         StringBuilder sb = new StringBuilder();
         for (char character : title.toCharArray())
@@ -173,13 +658,256 @@ public class WebsiteGenerator implements Runnable
         return URLEncoder.encode(result, "UTF-8");
     }
 
+    /**
+     * Check whether a page or blog post has not changed since the previous download, in which case
+     * its entry in the previous download manifest is carried over to the new download manifest
+     * and the pages and attachments it links to are submitted again, as its body is not.
+     * @param id Page or blog post identifier.
+     * @param version Page or blog post version, <code>null</code> if unknown.
+     * @return <code>true</code> if the page or blog post has the same version as in the previous
+     * download and its output file still exists, <code>false</code> otherwise.
+     * @throws IOException If writing the download journal fails.
+     */
+    private static boolean isUnchanged(String id, JSONObject version) throws IOException
+    {
+        JSONObject previous = previousManifest.get(id);
+        if (previous == null || version == null
+            || previous.getInt("version") != version.getInt("number")
+            || !new File(previous.getString("file")).isFile())
+        {
+            return false;
+        }
+        // Manifests of older downloads do not have the links, the page then is downloaded again
+        JSONArray links = previous.optJSONArray("links");
+        if (links == null)
+        {
+            return false;
+        }
+        manifest.put(id, previous);
+        for (int i = 0; i < links.length(); i++)
+        {
+            submit(confluenceUrl(links.getString(i)));
+        }
+        return true;
+    }
+
+    /**
+     * List all pages or blog posts of the Codehaus Cargo space, following the pagination cursors,
+     * and trigger the asynchronous download of each batch of results as soon as it has been
+     * received.
+     * @param type Content type in the Confluence APIs, i.e. <code>pages</code> or
+     * <code>blogposts</code>.
+     * @param description Content type description, for logging.
+     * @return All pages or blog posts of the Codehaus Cargo space.
+     * @throws Exception If anything goes wrong.
+     */
+    private static JSONArray list(String type, String description) throws Exception
+    {
+        // The listings cannot have the view body format, only the pages and blog posts themselves
+        URL url = new URL(CONFLUENCE_URL + "/wiki/api/v2/spaces/753666/" + type + "?limit=250");
+        JSONArray all = new JSONArray();
+        while (url != null)
+        {
+            // The listing is done by the main thread, so it can simply wait before retrying
+            RetryState listing = new RetryState();
+            StringBuilder sb = new StringBuilder();
+            while (true)
+            {
+                Metrics.Download timer = METRICS.download("listing", url.toString());
+                CountingInputStream is = null;
+                try
+                {
+                    is = new CountingInputStream(
+                        transport.get(url, listing.authenticate, true));
+                    try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(is, StandardCharsets.UTF_8)))
+                    {
+                        for (String line = reader.readLine(); line != null;
+                            line = reader.readLine())
+                        {
+                            sb.append(line);
+                        }
+                    }
+                    timer.end(is.getCount(), 200);
+                    break;
+                }
+                catch (HostBusyException e)
+                {
+                    Thread.sleep(listing.retryDelay(e));
+                }
+                catch (IOException e)
+                {
+                    timer.end(is == null ? 0 : is.getCount(), statusCode(e));
+                    sb.setLength(0);
+                    Thread.sleep(listing.retryDelay(e));
+                }
+            }
+            JSONObject response = new JSONObject(sb.toString());
+            JSONArray results = response.getJSONArray("results");
+            System.out.println("Found " + results.length() + " " + description + " to handle");
+            for (int i = 0; i < results.length(); i++)
+            {
+                JSONObject item = results.getJSONObject(i);
+                all.put(item);
+                String id = item.getString("id");
+                if ("blogposts".equals(type))
+                {
+                    blogpostIdentifiers.put(id, toFilename(item.getString("title")));
+                }
+                WebsiteGenerator runnable = new WebsiteGenerator();
+                runnable.url = new URL(CONFLUENCE_URL + "/wiki/api/v2/" + type
+                    + "/" + id + "?body-format=view");
+                // The version of the listed pages and blog posts is already known
+                runnable.versionChecked = true;
+                synchronized (downloads)
+                {
+                    if (!downloads.add(runnable.url))
+                    {
+                        // Already found via a link in a previous batch
+                        continue;
+                    }
+                }
+                if (isUnchanged(id, item.optJSONObject("version")))
+                {
+                    unchanged.add(runnable.url);
+                    continue;
+                }
+                frontier.submit(runnable, CrawlFrontier.Lane.PAGE, 0);
+            }
+
+            url = null;
+            JSONObject links = response.optJSONObject("_links");
+            if (links != null && links.has("next"))
+            {
+                url = new URL(new URL(CONFLUENCE_URL), links.getString("next"));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Get the URL to download content of Atlassian Confluence from.
+     * @param url URL of the content, possibly on the public Atlassian Confluence.
+     * @return URL to download the content from.
+     * @throws MalformedURLException If the URL is not valid.
+     */
+    private static URL confluenceUrl(String url) throws MalformedURLException
+    {
+        if (url.startsWith(PUBLIC_CONFLUENCE_URL + "/"))
+        {
+            return new URL(CONFLUENCE_URL + url.substring(PUBLIC_CONFLUENCE_URL.length()));
+        }
+        return new URL(url);
+    }
+
+    /**
+     * Submit the download of a page or attachment, unless it has already been submitted or
+     * nothing is being downloaded (for example, when benchmarking the link rewriting).
+     * @param url URL to download.
+     * @return Whether the download has been submitted.
+     * @throws IOException If writing the download journal fails.
+     */
+    private static boolean submit(URL url) throws IOException
+    {
+        if (frontier == null || !downloads.add(url))
+        {
+            return false;
+        }
+        journal.discovered(url);
+        WebsiteGenerator runnable = new WebsiteGenerator();
+        runnable.url = url;
+        if ("body-format=view".equals(url.getQuery()))
+        {
+            frontier.submit(runnable, CrawlFrontier.Lane.PAGE, 0);
+        }
+        else
+        {
+            frontier.submit(runnable, CrawlFrontier.Lane.ATTACHMENT,
+                attachmentDownloader.getExpectedSize(url));
+        }
+        return true;
+    }
+
+    /**
+     * Submit the download of a page or attachment found via a link of the page body being
+     * rewritten, and remember the link for the download manifest entry of that page.
+     * @param url URL of the page or attachment, possibly on the public Atlassian Confluence.
+     * @return Whether the download has been submitted.
+     * @throws IOException If the URL is not valid or writing the download journal fails.
+     */
+    private static boolean submitLink(String url) throws IOException
+    {
+        Set<String> links = PAGE_LINKS.get();
+        if (links != null)
+        {
+            links.add(url);
+        }
+        return submit(confluenceUrl(url));
+    }
+
+    /**
+     * Report the download progress, at most every 5 seconds and once all tasks have completed.
+     * @param completed Number of completed tasks so far.
+     * @param submitted Number of submitted tasks so far.
+     */
+    private static synchronized void progress(int completed, int submitted)
+    {
+        long now = System.currentTimeMillis();
+        long elapsed = now - WebsiteGenerator.lastProgress;
+        if (elapsed >= 5000 || completed == submitted)
+        {
+            long size = METRICS.get("download.bytes");
+            System.out.println("  - Completed " + completed + "/" + submitted + " tasks, "
+                + ((now - WebsiteGenerator.downloadStart) / 1000)
+                + " seconds spent so far, approximate download speed since last message has been "
+                + ((size - WebsiteGenerator.lastProgressSize) * 1000 / 1024 / Math.max(elapsed, 1))
+                + " KB/s");
+            WebsiteGenerator.lastProgressSize = size;
+            WebsiteGenerator.lastProgress = now;
+        }
+    }
+
+    /**
+     * Read the Atlassian Confluence credentials and create the transport of the downloads.
+     * @param confluenceCredentialsPath Path of the Atlassian Confluence credentials file.
+     * @throws IOException If reading the credentials file fails.
+     */
+    static void connect(String confluenceCredentialsPath) throws IOException
+    {
+        try (InputStream input = new FileInputStream(confluenceCredentialsPath))
+        {
+            Properties confluenceCredentials = new Properties();
+            confluenceCredentials.load(input);
+            String userInfo =
+                confluenceCredentials.getProperty("cargo.confluence.username") + ":"
+                    + confluenceCredentials.getProperty("cargo.confluence.apiKey");
+            WebsiteGenerator.confluenceAuthentication = "Basic "
+                + Base64.getEncoder().encodeToString(
+                    userInfo.getBytes(StandardCharsets.UTF_8));
+        }
+        WebsiteGenerator.transport =
+            new HttpTransport(WebsiteGenerator.confluenceAuthentication, DOWNLOAD_CONCURRENCY);
+    }
+
     /**
      * Trigger the asynchronous download of content from the Wiki.
      * @throws Exception If anything goes wrong.
      */
-    private static void download() throws Exception
+    static void download() throws Exception
     {
         long start = System.currentTimeMillis();
+        WebsiteGenerator.downloadStart = start;
+        WebsiteGenerator.lastProgress = start;
+        WebsiteGenerator.frontier = new CrawlFrontier(CONTENT_DOWNLOADERS, DOWNLOAD_CONCURRENCY,
+            ATTACHMENT_CONCURRENCY, WebsiteGenerator::progress);
+        String threads = "virtual threads";
+        if (CONTENT_DOWNLOADERS instanceof ThreadPoolExecutor)
+        {
+            threads = "platform threads";
+        }
+        System.out.println("Downloading with up to " + DOWNLOAD_CONCURRENCY
+            + " parallel downloads on " + threads + ", of which up to " + ATTACHMENT_CONCURRENCY
+            + " attachments");
 
         File attachmentsDirectory = new File("target", "attachments");
         if (!attachmentsDirectory.isDirectory())
@@ -196,72 +924,54 @@ public class WebsiteGenerator implements Runnable
         {
             tempDirectory.mkdirs();
         }
+        WebsiteGenerator.attachmentDownloader =
+            new AttachmentDownloader(transport, new File(tempDirectory, "attachments"));
 
-        URL url =
-            new URL("https://codehaus-cargo.atlassian.net/wiki/api/v2/spaces/753666/pages?limit=250");
-        URLConnection connection = url.openConnection();
-        connection.addRequestProperty("Authorization", WebsiteGenerator.confluenceAuthentication);
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader =
-            new BufferedReader(new InputStreamReader(connection.getInputStream())))
+        File manifestFile = new File(tempDirectory, "manifest.json");
+        if (INCREMENTAL_DOWNLOAD && manifestFile.isFile())
         {
-            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            JSONObject previous = new JSONObject(readFile(manifestFile));
+            for (String id : previous.keySet())
             {
-                sb.append(line);
+                previousManifest.put(id, previous.getJSONObject(id));
             }
         }
-        JSONObject response = new JSONObject(sb.toString());
-        JSONArray pages = response.getJSONArray("results");
-        System.out.println("Found " + pages.length() + " pages to handle");
-        for (int i = 0; i < pages.length(); i++)
+        File journalFile = new File(tempDirectory, "journal.jsonl");
+        if (!RESUME_DOWNLOAD && journalFile.isFile() && !journalFile.delete())
         {
-            WebsiteGenerator runnable = new WebsiteGenerator();
-            String id = pages.getJSONObject(i).getString("id");
-            url = new URL(
-                "https://codehaus-cargo.atlassian.net/wiki/api/v2/pages/" + id + "?body-format=view");
-            runnable.url = url;
-            synchronized (downloads)
-            {
-                downloads.add(runnable.url);
-            }
-            Thread thread = new Thread(runnable);
-            CONTENT_DOWNLOADERS.submit(thread);
+            throw new IOException("Cannot delete file " + journalFile);
         }
-
-        url =
-            new URL("https://codehaus-cargo.atlassian.net/wiki/api/v2/spaces/753666/blogposts?limit=250");
-        connection = url.openConnection();
-        connection.addRequestProperty("Authorization", WebsiteGenerator.confluenceAuthentication);
-        sb = new StringBuilder();
-        try (BufferedReader reader =
-            new BufferedReader(new InputStreamReader(connection.getInputStream())))
+        WebsiteGenerator.journal = new DownloadJournal(journalFile);
+        if (journal.isResumed())
         {
-            for (String line = reader.readLine(); line != null; line = reader.readLine())
-            {
-                sb.append(line);
-            }
+            // The pages and blog posts downloaded by the previous download are as recent, and are
+            // only kept (and carried into the manifest) if their version has not changed since
+            Map<String, JSONObject> resumedPages = journal.getPages();
+            previousManifest.putAll(resumedPages);
+            System.out.println("Resuming the previous download, which has not completed, with "
+                + resumedPages.size() + " pages and blog posts already downloaded");
         }
-        response = new JSONObject(sb.toString());
-        JSONArray blogposts = response.getJSONArray("results");
-        System.out.println("Found " + blogposts.length() + " blog posts to handle");
-        for (int i = 0; i < blogposts.length(); i++)
+
+        // List the blog posts first, so that links to blog posts can be resolved when rewriting
+        blogpostIdentifiers.put("476119041", "Configuring+HTTP+2+for+Tomcat+8.5+and+above");
+        JSONArray blogposts = list("blogposts", "blog posts");
+        JSONArray pages = list("pages", "pages");
+        System.out.println("Found " + pages.length() + " pages and " + blogposts.length()
+            + " blog posts in total");
+        if (journal.isResumed())
         {
-            String id = blogposts.getJSONObject(i).getString("id");
-            blogpostIdentifiers.put(id,
-                toFilename(blogposts.getJSONObject(i).getString("title")));
-            WebsiteGenerator runnable = new WebsiteGenerator();
-            url = new URL(
-                "https://codehaus-cargo.atlassian.net/wiki/api/v2/blogposts/" + id + "?body-format=view");
-            runnable.url = url;
-            synchronized (downloads)
+            // The pages which are not listed have been found via links, and so have attachments
+            int resubmitted = 0;
+            for (URL pending : journal.getPending())
             {
-                downloads.add(runnable.url);
+                if (submit(pending))
+                {
+                    resubmitted++;
+                }
             }
-            Thread thread = new Thread(runnable);
-            CONTENT_DOWNLOADERS.submit(thread);
+            System.out.println("Resubmitted " + resubmitted
+                + " pages and attachments found via links by the previous download");
         }
-        blogpostIdentifiers.put("476119041", "Configuring+HTTP+2+for+Tomcat+8.5+and+above");
-
         if (DOWNLOAD_ATTACHMENTS)
         {
             String[] banners = new String[]
@@ -272,38 +982,32 @@ public class WebsiteGenerator implements Runnable
             };
             for (String banner : banners)
             {
-                URL attachmentUrl =
-                    new URL("https://codehaus-cargo.atlassian.net/wiki/download/attachments/491540/" + banner);
-                synchronized (downloads)
-                {
-                    if (!downloads.contains(attachmentUrl))
-                    {
-                        downloads.add(attachmentUrl);
-                        WebsiteGenerator runnable = new WebsiteGenerator();
-                        runnable.url = attachmentUrl;
-                        Thread thread = new Thread(runnable);
-                        CONTENT_DOWNLOADERS.submit(thread);
-                    }
-                }
+                URL attachmentUrl = new URL(
+                    CONFLUENCE_URL + "/wiki/download/attachments/491540/" + banner);
+                submit(attachmentUrl);
             }
         }
 
-        while (CONTENT_DOWNLOADERS.getCompletedTaskCount() < downloads.size())
+        frontier.await();
+        attachmentDownloader.save();
+        METRICS.record("download", (System.currentTimeMillis() - start) * 1000000L);
+        METRICS.add("download.attachment.notModified", attachmentDownloader.getNotModified());
+        METRICS.add("download.attachment.deduplicated", attachmentDownloader.getDeduplicated());
+        METRICS.add("download.unchanged", unchanged.size());
+        System.out.println("All tasks complete, total downloaded: "
+            + (METRICS.get("download.bytes") / 1024 / 1024) + " MB");
+        if (!unchanged.isEmpty())
         {
-            Thread.sleep(5000);
-            System.out.println("  - Completed " + CONTENT_DOWNLOADERS.getCompletedTaskCount() + "/"
-                + downloads.size() + " tasks, " +  ((System.currentTimeMillis() - start) / 1000)
-                + " seconds spent so far, approximate download speed since last message has been "
-                + (WebsiteGenerator.speed / 1024 / 5) + " KB/s");
-            WebsiteGenerator.speed = 0;
+            System.out.println("  - Skipped " + unchanged.size()
+                + " pages and blog posts which have not changed since the previous download");
         }
-        if (CONTENT_DOWNLOADERS.getCompletedTaskCount() < downloads.size())
+        if (attachmentDownloader.getNotModified() > 0 || attachmentDownloader.getDeduplicated() > 0)
         {
-            throw new Exception("WARNING: Only completed " + CONTENT_DOWNLOADERS.getCompletedTaskCount()
-                + " tasks out of " + downloads.size());
+            System.out.println("  - " + attachmentDownloader.getNotModified()
+                + " attachments not modified since the previous download, "
+                + attachmentDownloader.getDeduplicated()
+                + " attachments with the same content as another one");
         }
-        System.out.println(
-            "All tasks complete, total downloaded: " + (WebsiteGenerator.size / 1024 / 1024) + " MB");
         for (File page : WebsiteGenerator.pages)
         {
             System.out.println("  - Wrote file " + page.getAbsolutePath());
@@ -315,9 +1019,14 @@ public class WebsiteGenerator implements Runnable
                 System.out.println("  - Pending exception for URL " + exception.getKey() + ": " + exception.getValue());
                 exception.getValue().printStackTrace();
             }
+            journal.close();
+            System.out.println("The next download will resume this one, see "
+                + journalFile.getAbsolutePath());
             throw new Exception("Some files have failed download");
         }
         writeFile(new File(tempDirectory, "pages.json"), pages.toString(4));
+        writeFile(manifestFile, new JSONObject(manifest).toString(4));
+        journal.delete();
         System.out.println(
             "Export completed, total time taken " + ((System.currentTimeMillis() - start) / 1000) + " seconds");
     }
@@ -328,32 +1037,29 @@ public class WebsiteGenerator implements Runnable
      */
     private static void parse() throws Exception
     {
+        long start = System.currentTimeMillis();
         System.out.println("Parsing files and generating Web site");
         File target = new File("target");
         File attachments = new File(target, "attachments");
         File classes = new File(target, "classes");
         JSONArray pages = new JSONArray(readFile(new File(target, "temp/pages.json")));
-        Map<String, JSONObject> pageDetails = new HashMap<String, JSONObject>(pages.length());
-        for (int i = 0; i < pages.length(); i++)
-        {
-            JSONObject page = pages.getJSONObject(i);
-            pageDetails.put(page.getString("id"), page);
-        }
-        Map<String, List<String>> breadcrumbs = new HashMap<String, List<String>>();
+        final PageGraph pageGraph = new PageGraph();
+        Map<String, String> lastModified = new HashMap<String, String>();
         for (int i = 0; i < pages.length(); i++)
         {
-            List<String> breadcrumb = new ArrayList<String>();
             JSONObject page = pages.getJSONObject(i);
-            Object parent = page.get("parentId");
-            while (parent != null && parent instanceof String)
+            String filename = toFilename(page.getString("title"));
+            JSONObject version = page.optJSONObject("version");
+            if (version != null && version.has("createdAt"))
             {
-                JSONObject ancestor = pageDetails.get(parent.toString());
-                breadcrumb.add(ancestor.getString("title"));
-                parent = ancestor.get("parentId");
+                lastModified.put(filename, version.getString("createdAt"));
             }
-            Collections.reverse(breadcrumb);
-            breadcrumbs.put(toFilename(page.getString("title")), breadcrumb);
+            Object parent = page.get("parentId");
+            pageGraph.addPage(page.getString("id"), page.getString("title"), filename,
+                parent instanceof String ? (String) parent : null);
         }
+        // Before the parallel rendering, so the breadcrumbs do not depend on the rendering order
+        pageGraph.calculateAncestors();
         Files.copy(new File(classes, "blank.gif").toPath(),
             new File(attachments, "blank.gif").toPath(), StandardCopyOption.REPLACE_EXISTING);
         Files.copy(new File(classes, "favicon.ico").toPath(),
@@ -361,118 +1067,302 @@ public class WebsiteGenerator implements Runnable
         writeFile(new File(attachments, "site.css"), readFile(new File(classes, "site.css")));
         File sourceDirectory = new File(target, "source");
         Files.copy(new File(classes, "search.html").toPath(),
-            new File(sourceDirectory, "Search").toPath(), StandardCopyOption.REPLACE_EXISTING);
-        String template = readFile(new File(target, "classes/cargo-template.html"));
+            new File(sourceDirectory, SEARCH_PAGE).toPath(), StandardCopyOption.REPLACE_EXISTING);
         String navigation = readFile(new File(sourceDirectory, "Navigation"));
-        template = template.replace("$navigation", navigation);
-        for (File sourceFile : sourceDirectory.listFiles())
-        {
-            String name = sourceFile.getName();
-            File file = new File(target, name + ".html");
-            String value = readFile(sourceFile);
-            value = value.replace("http://repo.maven", "https://repo.maven");
-            value = value.replace("http://repo1.maven", "https://repo.maven");
-            value = value.replaceAll(
-                "<script type=\"syntaxhighlighter\"[^>]+><\\!\\[CDATA\\[", "<pre>");
-            value = value.replace("]]></script>", "</pre>");
-            value = value.replaceAll("<div id=\"jira-issues-\\d*\"", "<div");
-            value = value.replaceAll("\\s+class=\"legacy-color-text-[^\"]+\"", "");
-            value = value.replace(" style=\"text-decoration: none;\"", "");
-            value = value.replace("<ol start=\"1\"", "<ol");
-            value = value.replace("<span>", "");
-            StringBuilder breadcrumbsSB = new StringBuilder();
-            if (breadcrumbs.containsKey(name))
-            {
-                for (String breadcrumb : breadcrumbs.get(name))
-                {
-                    breadcrumbsSB.append("<a href=\"");
-                    breadcrumbsSB.append(toFilename(breadcrumb));
-                    breadcrumbsSB.append(".html\">");
-                    breadcrumbsSB.append(breadcrumb);
-                    breadcrumbsSB.append("</a> &gt; ");
-                }
-            }
-            Document document = Jsoup.parse(template
-                .replace("$name", name)
-                .replace("$title", URLDecoder.decode(name, "UTF-8"))
-                .replace("$breadcrumbs", breadcrumbsSB.toString())
-                .replace("$value", value)
-                .replaceAll("\\s*data-[^=\\s]+=\"[^\"]+\"", "")
-                .replaceAll("\\s*id=\"refresh-[^\"]+\"", "").replace(" data-macro-id=\"\"", "")
-                .replaceAll("(<\\w+)\\s+local-id=\"\\w+\"", "$1")
-                .replace(" class=\"external-link\"", "").replace(" rel=\"nofollow\"", "")
-                .replace(" class=\"conf-macro output-inline\"", "")
-                .replace("<a href=\"http://java.sun.com\">java.sun.com</a>", "java.sun.com")
-                .replace("<a href=\"http://java.io\">java.io</a>", "java.io")
-                .replace("http://jira.codehaus.org/browse/CARGO-",
-                    "https://codehaus-cargo.atlassian.net/browse/CARGO-")
-                .replace("https://jira.codehaus.org/browse/CARGO-",
-                    "https://codehaus-cargo.atlassian.net/browse/CARGO-")
-                .replace(
-                    "src=\"https://codehaus-cargo.semaphoreci.com/badges/",
-                    "id=\"ci-status-image\" src=\"https://codehaus-cargo.semaphoreci.com/badges/")
-                .replace("<div class=\"confluence-information-macro confluence-information-macro-note "
-                    + "conf-macro output-block\"><span class=\"aui-icon aui-icon-small "
-                    + "aui-iconfont-warning confluence-information-macro-icon\"> </span><div "
-                    + "class=\"confluence-information-macro-body\"><p>This page / section has been "
-                    + "automatically generated by Cargo's build. Do not edit it directly as it'll "
-                    + "be overwritten next time it's generated again.</p></div></div>", "")
-                .replace("<div class=\"confluence-information-macro confluence-information-macro-note "
-                    + "conf-macro output-block\"><span class=\"aui-icon aui-icon-small "
-                    + "aui-iconfont-warning confluence-information-macro-icon\"> </span><div "
-                    + "class=\"confluence-information-macro-body\"><p>This page has been "
-                    + "automatically generated by Cargo's build. Do not edit it directly as it'll "
-                    + "be overwritten next time it's generated again.</p></div></div>", ""));
-
-            // Allow certain characters (dots, equal signs, etc.) act as whitespace in
-            // <code> elements inside tables, so page widths remain "reasonable"
-            for (Element table : document.getElementsByClass("confluenceTable"))
-            {
-                for (Element code : table.getElementsByTag("code"))
-                {
-                    String codeHtml = code.html();
-                    if (!codeHtml.contains("<"))
+        String rawTemplate = readFile(new File(target, "classes/cargo-template.html"));
+        File navigationFragment = new File(attachments, "navigation.html");
+        long navigationSavings = 0;
+        if (SHARED_NAVIGATION)
+        {
+            writeFile(navigationFragment, renderFragment(navigation));
+            // The pages only differ by the navigation, hence differ as much as empty pages do
+            navigationSavings = renderedSize(new PageTemplate(
+                rawTemplate.replace("$navigation", navigation), TEMPLATE_REWRITER));
+            navigation = readFile(new File(classes, "navigation-loader.html"));
+        }
+        else if (navigationFragment.isFile() && !navigationFragment.delete())
+        {
+            throw new IOException("Cannot delete file " + navigationFragment);
+        }
+        final PageTemplate template =
+            new PageTemplate(rawTemplate.replace("$navigation", navigation), TEMPLATE_REWRITER);
+        final RenderCache renderCache = new RenderCache(new File(target, "temp/render-cache.json"),
+            Integer.toString(RENDER_RULES_VERSION),
+            String.valueOf(Jsoup.class.getPackage().getImplementationVersion()), rawTemplate,
+            navigation);
+        File[] sourceFiles = sourceDirectory.listFiles();
+        Arrays.sort(sourceFiles);
+        File searchDirectory = new File(attachments, "search");
+        final SearchIndex searchIndex = new SearchIndex(searchDirectory);
+        // The template includes the navigation, which is hence linked from every page
+        Set<String> templateLinks = pageLinks(rawTemplate);
+        templateLinks.add("Navigation");
+        pageGraph.addLinks(TEMPLATE_PAGE, templateLinks);
+        final Map<String, String> pageLastModified = Collections.unmodifiableMap(lastModified);
+        List<Callable<Boolean>> renders = new ArrayList<Callable<Boolean>>(sourceFiles.length);
+        for (final File sourceFile : sourceFiles)
+        {
+            renders.add(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    return render(sourceFile, target, template, pageGraph, searchIndex,
+                        pageLastModified, renderCache);
+                }
+            });
+        }
+        ForkJoinPool renderers = new ForkJoinPool(RENDER_PARALLELISM);
+        int unchanged = 0;
+        try
+        {
+            // The futures are in the order of the (sorted) source files, so the log is as well
+            List<Future<Boolean>> results = renderers.invokeAll(renders);
+            for (int i = 0; i < sourceFiles.length; i++)
+            {
+                File file = new File(target, sourceFiles[i].getName() + ".html");
+                try
+                {
+                    if (results.get(i).get())
+                    {
+                        System.out.println("  - Wrote file " + file.getAbsolutePath());
+                    }
+                    else
+                    {
+                        System.out.println("  - Unchanged file " + file.getAbsolutePath());
+                        unchanged++;
+                    }
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof Exception)
                     {
-                        code.html(codeHtml
-                            .replace(".", ".<wbr>")
-                            .replace(".<wbr>*", ".")
-                            .replace(".<wbr>.<wbr>.<wbr>", "...")
-                            .replace("(", "<wbr>(")
-                            .replace("=", "=<wbr>")
-                            .replace("&gt;", "&gt;<wbr>")
-                            .replace("&lt;/", "<wbr>&lt;/"));
+                        throw (Exception) e.getCause();
                     }
+                    throw e;
                 }
             }
+        }
+        finally
+        {
+            renderers.shutdown();
+        }
+        renderCache.save();
+        METRICS.record("parse", (System.currentTimeMillis() - start) * 1000000L);
+        System.out.println("Parsing complete, " + (sourceFiles.length - unchanged)
+            + " files written and " + unchanged + " files unchanged");
+        if (SHARED_NAVIGATION)
+        {
+            navigationSavings -= renderedSize(template);
+            long savings = sourceFiles.length * navigationSavings - navigationFragment.length();
+            System.out.println("Navigation written once to " + navigationFragment.getAbsolutePath()
+                + " (" + navigationFragment.length() + " bytes), saving " + savings
+                + " bytes over " + sourceFiles.length + " pages");
+        }
+        report(pageGraph, sourceFiles, new File(target, "temp/page-graph.json"));
+        int searchChanged = searchIndex.write();
+        System.out.println("Search index written to " + searchDirectory.getAbsolutePath() + ", "
+            + searchChanged + " files changed");
+    }
 
-            for (Element jim : new ArrayList<Element>(
-                document.getElementsByClass("jim-sortable-dark-layout")))
-            {
-                jim.remove();
-            }
-            for (Element refresh : new ArrayList<Element>(
-                document.getElementsByClass("refresh-issues-bottom")))
+    /**
+     * Render one page of the Web site. This method may be called by several threads at the same
+     * time, hence only reads the shared template and modification dates, and adds the page to
+     * the page graph and search index.
+     * @param sourceFile Source file of the page.
+     * @param target Target directory.
+     * @param template Page template, with the navigation already in it.
+     * @param pageGraph Page graph.
+     * @param searchIndex Search index.
+     * @param lastModified Modification date of each page, indexed by file name.
+     * @param renderCache Render cache.
+     * @return Whether the rendered file has changed.
+     * @throws IOException If reading or writing fails.
+     */
+    private static boolean render(File sourceFile, File target, PageTemplate template,
+        PageGraph pageGraph, SearchIndex searchIndex, Map<String, String> lastModified,
+        RenderCache renderCache) throws IOException
+    {
+        String name = sourceFile.getName();
+        File file = new File(target, name + ".html");
+        Metrics.Stage stage = METRICS.stage("read", name);
+        String source = readFile(sourceFile);
+        String title = URLDecoder.decode(name, "UTF-8");
+        pageGraph.addLinks(name, pageLinks(source));
+        StringBuilder breadcrumbsSB = new StringBuilder();
+        for (PageGraph.Page ancestor : pageGraph.getAncestors(name))
+        {
+            breadcrumbsSB.append("<a href=\"");
+            breadcrumbsSB.append(ancestor.getFilename());
+            breadcrumbsSB.append(".html\">");
+            breadcrumbsSB.append(ancestor.getTitle());
+            breadcrumbsSB.append("</a> &gt; ");
+        }
+        String modified = lastModified.containsKey(name) ? lastModified.get(name) : "";
+        boolean cached = renderCache.isCached(
+            name, renderCache.key(name, source, breadcrumbsSB.toString(), modified), file);
+        boolean searchable = !SEARCH_PAGE.equals(name);
+        if (cached && RENDER_CACHE && (!searchable || searchIndex.keepPage(name)))
+        {
+            stage.end();
+            METRICS.increment("render.pages.cached");
+            return false;
+        }
+        stage.end();
+
+        stage = METRICS.stage("rewrite", name);
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("name", name);
+        values.put("title", title);
+        values.put("breadcrumbs", breadcrumbsSB.toString());
+        values.put("value", SOURCE_REWRITER.rewrite(source));
+        values.put("canonical", WEBSITE_URL + name + ".html");
+        // Pages without a modification date get no meta element at all, not an empty one
+        values.put("lastModifiedMeta", modified.isEmpty() ? ""
+            : "<meta name=\"dcterms.modified\" content=\"" + modified + "\"/>");
+        Reader page = template.render(values);
+        stage.end();
+
+        stage = METRICS.stage("parse", name);
+        Document document = Parser.htmlParser().parseInput(page, "");
+        stage.end();
+
+        stage = METRICS.stage("transform", name);
+        DOCUMENT_TRANSFORMER.transform(document);
+        stage.end();
+
+        if (searchable)
+        {
+            // Index the transformed content, without the navigation and breadcrumbs of the template
+            stage = METRICS.stage("index", name);
+            Element content = document.selectFirst("#cargo-content .rightColumn");
+            searchIndex.addPage(name, title, (content == null ? document.body() : content).text());
+            stage.end();
+        }
+
+        stage = METRICS.stage("serialize", name);
+        String html = HTML_REWRITER.rewrite(document.html());
+        stage.end();
+
+        stage = METRICS.stage("write", name);
+        boolean changed = writeFile(file, html);
+        stage.end();
+        METRICS.increment(changed ? "render.pages.written" : "render.pages.unchanged");
+        return changed;
+    }
+
+    /**
+     * Render an HTML fragment with the same rules as the pages.
+     * @param fragment HTML fragment.
+     * @return Rendered HTML fragment.
+     */
+    private static String renderFragment(String fragment)
+    {
+        Document document = Jsoup.parseBodyFragment(TEMPLATE_REWRITER.rewrite(fragment));
+        DOCUMENT_TRANSFORMER.transform(document);
+        return HTML_REWRITER.rewrite(document.body().html());
+    }
+
+    /**
+     * Calculate the size of the file of an empty page.
+     * @param template Page template.
+     * @return Size of the file of an empty page rendered with the template, in bytes.
+     * @throws IOException If rendering the page fails.
+     */
+    private static long renderedSize(PageTemplate template) throws IOException
+    {
+        Document document = Parser.htmlParser().parseInput(
+            template.render(Collections.<String, String>emptyMap()), "");
+        DOCUMENT_TRANSFORMER.transform(document);
+        String html = HTML_REWRITER.rewrite(document.html());
+        // The file has Windows line endings
+        long size = html.getBytes(StandardCharsets.UTF_8).length;
+        for (int i = 0; i < html.length(); i++)
+        {
+            if (html.charAt(i) == '\n')
             {
-                refresh.remove();
+                size++;
             }
-            for (Element refresh : new ArrayList<Element>(
-                document.getElementsByClass("refresh-macro")))
+        }
+        return size;
+    }
+
+    /**
+     * Find the links to other pages of the Web site, in the <code>href</code> and
+     * <code>action</code> attributes of a page.
+     * @param html HTML of the page.
+     * @return File names of the linked pages.
+     * @throws IOException If reading the links fails.
+     */
+    private static Set<String> pageLinks(String html) throws IOException
+    {
+        final Set<String> links = new HashSet<String>();
+        LinkRewriter.Handler collector = new LinkRewriter.Handler()
+        {
+            @Override
+            public String rewrite(String value)
             {
-                refresh.remove();
+                int end = value.length();
+                int hash = value.indexOf('#');
+                if (hash != -1)
+                {
+                    end = hash;
+                }
+                int query = value.indexOf('?');
+                if (query != -1 && query < end)
+                {
+                    end = query;
+                }
+                String link = value.substring(0, end);
+                if (link.endsWith(".html") && link.indexOf(':') == -1 && link.indexOf('/') == -1)
+                {
+                    links.add(link.substring(0, link.length() - 5));
+                }
+                return null;
             }
+        };
+        LinkRewriter.builder().handler("href", collector).handler("action", collector).build()
+            .rewrite(html);
+        return links;
+    }
 
-            writeFile(file, document.html()
-                .replaceAll("(?s)[\\r\\n\\s]*<p>[\\r\\n\\s]*</p>", "")
-                .replace("<p>&nbsp; <a", "<p><a")
-                .replace("&nbsp;<code>", " <code>")
-                .replace("<code><wbr>", "<code>")
-                .replace("<wbr></code>", "</code>")
-                .replace("\u201C", "\"")
-                .replace("\u201D", "\"")
-                .replace("\u2019", "'"));
-            System.out.println("  - Wrote file " + file.getAbsolutePath());
+    /**
+     * Report the cycles in the page hierarchy and the broken links, and save these as well as the
+     * orphan pages and the pages linking to each page.
+     * @param pageGraph Page graph, with the links of all pages.
+     * @param sourceFiles Source files of the pages.
+     * @param reportFile Report file.
+     * @throws IOException If writing the report file fails.
+     */
+    private static void report(PageGraph pageGraph, File[] sourceFiles, File reportFile)
+        throws IOException
+    {
+        Set<String> existing = new HashSet<String>(sourceFiles.length);
+        for (File sourceFile : sourceFiles)
+        {
+            existing.add(sourceFile.getName());
+        }
+        List<List<String>> cycles = pageGraph.getCycles();
+        Map<String, ? extends Set<String>> brokenLinks = pageGraph.getBrokenLinks(existing);
+        Set<String> orphans = pageGraph.getOrphans(existing);
+        System.out.println("Found " + cycles.size() + " cycles in the page hierarchy, "
+            + brokenLinks.size() + " pages with broken links and " + orphans.size()
+            + " orphan pages, see " + reportFile.getAbsolutePath());
+        for (List<String> cycle : cycles)
+        {
+            System.out.println("  - Cycle between pages " + cycle);
+        }
+        for (Map.Entry<String, ? extends Set<String>> broken : brokenLinks.entrySet())
+        {
+            System.out.println("  - Page " + broken.getKey() + " links to missing pages "
+                + broken.getValue());
         }
-        System.out.println("Parsing complete");
+        JSONObject report = new JSONObject();
+        report.put("cycles", new JSONArray(cycles));
+        report.put("brokenLinks", new JSONObject(brokenLinks));
+        report.put("orphans", new JSONArray(orphans));
+        report.put("inboundLinks", new JSONObject(pageGraph.getInboundLinks()));
+        writeFile(reportFile, report.toString(4));
     }
 
     /**
@@ -481,24 +1371,56 @@ public class WebsiteGenerator implements Runnable
      * @return File contents.
      * @throws IOException If anything goes wrong reading the file.
      */
-    private static String readFile(File f) throws IOException
+    static String readFile(File f) throws IOException
     {
         byte[] bytes = Files.readAllBytes(f.toPath());
         return new String(bytes, Charset.forName("UTF-8"));
     }
 
     /**
-     * Helper function to read a file.
+     * Helper function to write a file, with Windows line endings. The file is only written if its
+     * contents change, so unchanged files keep their modification time.
      * @param f File name.
      * @param value File contents.
-     * @throws IOException If anything goes wrong reading the file.
+     * @return Whether the file has changed.
+     * @throws IOException If anything goes wrong writing the file.
      */
-    private static void writeFile(File f, String value) throws IOException
+    static boolean writeFile(File f, String value) throws IOException
     {
-        try (PrintWriter writer = new PrintWriter(f, "UTF-8"))
+        ChangeDetectingOutputStream output = new ChangeDetectingOutputStream(f);
+        try (Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8))
         {
-            writer.write(value.replace("\r\n", "\n").replace("\n\r", "\n").replace("\r", "\n").replace("\n", "\r\n"));
+            // Line endings are \r\n, \n, \r or \n\r, the latter only if the \r does not start
+            // another \r\n
+            int start = 0;
+            int i = 0;
+            while (i < value.length())
+            {
+                char c = value.charAt(i);
+                if (c != '\r' && c != '\n')
+                {
+                    i++;
+                    continue;
+                }
+                writer.write(value, start, i - start);
+                writer.write("\r\n");
+                boolean lineFeed = c == '\n';
+                i++;
+                if (c == '\r' && i < value.length() && value.charAt(i) == '\n')
+                {
+                    lineFeed = true;
+                    i++;
+                }
+                if (lineFeed && i < value.length() && value.charAt(i) == '\r'
+                    && (i + 1 == value.length() || value.charAt(i + 1) != '\n'))
+                {
+                    i++;
+                }
+                start = i;
+            }
+            writer.write(value, start, value.length() - start);
         }
+        return output.isChanged();
     }
 
     /**
@@ -507,288 +1429,367 @@ public class WebsiteGenerator implements Runnable
     private URL url;
 
     /**
-     * Perform the download action. If anything goes wrong, the associated exception is added to the
-     * {@link WebsiteGenerator#exceptions} map.
+     * Retry state of the download.
+     */
+    private final RetryState retries = new RetryState();
+
+    /**
+     * Whether the version of the page has been compared with the previous download, or does not
+     * need to be as the listing has already done so.
+     */
+    private boolean versionChecked;
+
+    /**
+     * Perform the download action. If the download fails but can be retried, the crawl frontier is
+     * asked to run this task again later (instead of blocking a thread while waiting). If anything
+     * goes wrong, the associated exception is added to the {@link WebsiteGenerator#exceptions} map.
+     * @return Delay in milliseconds after which the download should be retried, or
+     * <code>-1</code> if the task is complete.
      */
     @Override
-    public void run()
+    public long execute()
     {
-        boolean tryWithAuthentication = true;
         try
         {
-            String value = "";
-            for (int i = 0; i < WebsiteGenerator.NUMBER_RETRIES; i++)
+            if (!versionChecked && "body-format=view".equals(url.getQuery()))
             {
-                URLConnection connection = url.openConnection();
-                if (tryWithAuthentication)
-                {
-                    connection.addRequestProperty("Authorization", WebsiteGenerator.confluenceAuthentication);
-                }
-                try (InputStream is = connection.getInputStream())
+                // Pages only found via links are not listed, so their version is checked here
+                String id = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+                if (previousManifest.containsKey(id))
                 {
-                    String filePath = url.getPath();
-                    filePath = filePath.substring(filePath.lastIndexOf('/'));
-                    filePath = URLDecoder.decode(filePath, "UTF-8");
-                    File file = new File("target");
-                    if ("body-format=view".equals(url.getQuery()))
-                    {
-                        file = new File(file, "temp");
-                    }
-                    else
+                    JSONObject version;
+                    try
                     {
-                        file = new File(file, "attachments");
+                        // Without any body format, the response only has the page metadata
+                        version = getJSON(new URL(url, url.getPath()), "version", null)
+                            .optJSONObject("version");
                     }
-                    file = new File(file, filePath);
-                    try (FileOutputStream fos = new FileOutputStream(file))
+                    catch (IOException e)
                     {
-                        byte[] buffer = new byte[8 * 1024];
-                        int bytesRead;
-                        while ((bytesRead = is.read(buffer)) != -1)
-                        {
-                            fos.write(buffer, 0, bytesRead);
-                            WebsiteGenerator.speed += bytesRead;
-                            WebsiteGenerator.size += bytesRead;
-                        }
+                        return retries.retryDelay(e);
                     }
-                    if ("body-format=view".equals(url.getQuery()))
+                    if (isUnchanged(id, version))
                     {
-                        value = readFile(file);
+                        unchanged.add(url);
+                        journal.completed(url, id, previousManifest.get(id));
+                        return -1;
                     }
                 }
-                catch (IOException e)
+                versionChecked = true;
+            }
+            // The pages and blog posts completed by the previous download, which is being resumed,
+            // are in the previous manifest: they have already been skipped if their version has
+            // not changed since, by list() or above. Only an attachment is skipped on the journal.
+            if (!"body-format=view".equals(url.getQuery()) && journal.isCompleted(url))
+            {
+                // Already downloaded by the previous download, which is being resumed
+                METRICS.increment("download.resumed");
+                return -1;
+            }
+            String filePath = url.getPath();
+            filePath = filePath.substring(filePath.lastIndexOf('/'));
+            filePath = URLDecoder.decode(filePath, "UTF-8");
+            JSONObject result;
+            try
+            {
+                if (!"body-format=view".equals(url.getQuery()))
                 {
-                    if (e.getMessage().contains("HTTP response code: 401"))
+                    File attachment = new File("target/attachments", filePath);
+                    Metrics.Download timer = METRICS.download("attachment", url.toString());
+                    try
                     {
-                        if (tryWithAuthentication)
-                        {
-                            tryWithAuthentication = false;
-                        }
-                        else
-                        {
-                            // 401 won't fix itself by retrying
-                            throw new IllegalStateException("Got error 401 after " + i + " retries", e);
-                        }
+                        AttachmentDownloader.Result download = attachmentDownloader.download(
+                            url, attachment, retries.authenticate);
+                        journal.completed(url, attachment);
+                        METRICS.add("download.bytes", download.getBytes());
+                        timer.end(download.getBytes(), download.getStatusCode());
+                    }
+                    catch (HostBusyException e)
+                    {
+                        // Not a download, the request has not been sent
+                        throw e;
                     }
-                    if (i == WebsiteGenerator.NUMBER_RETRIES - 1)
+                    catch (IOException e)
                     {
-                        throw new IllegalStateException("Failed after " + i + " retries", e);
+                        timer.end(0, statusCode(e));
+                        throw e;
                     }
-                    Thread.sleep(ThreadLocalRandom.current().nextInt(5000, 15000));
+                    return -1;
                 }
+                result = getJSON(url, "page",
+                    KEEP_RAW_JSON ? new File("target/temp", filePath) : null);
             }
-
-            if (!value.isEmpty())
+            catch (IOException e)
             {
-                JSONObject result = new JSONObject(value);
-                value = result.getJSONObject("body").getJSONObject("view").getString("value");
+                return retries.retryDelay(e);
+            }
 
-                Pattern pattern = Pattern.compile("<span [^>]*class=\"logoBlock\"[^>]*>(.*?)<\\/span>", Pattern.DOTALL);
-                Matcher matcher = pattern.matcher(value);
-                value = matcher.replaceAll("");
+            String value =
+                result.getJSONObject("body").getJSONObject("view").getString("value");
 
-                // Atlassian replaced most emojis with UTF-8 on December 2022, but forgot some
-                value = value.replace(":cross_mark:", "\u274C");
-                value = value.replace(":check_mark:", "\u2705");
-                value = value.replace(":green_star:", "\u2B50");
-                value = value.replaceAll("<img [^>]*alt=\"\\(thumbs up\\)\"[^>]*>", "\uD83D\uDC4D");
-                value = value.replaceAll("<img [^>]*alt=\"\\(thumbs down\\)\"[^>]*>", "\uD83D\uDC4E");
+            value = BODY_REWRITER.rewrite(value);
+            Set<String> links = new LinkedHashSet<String>();
+            PAGE_LINKS.set(links);
+            try
+            {
+                value = LINK_REWRITER.rewrite(value);
+            }
+            finally
+            {
+                PAGE_LINKS.remove();
+            }
 
-                // The Home page is special
-                value = value.replace("href='/wiki/spaces/CARGO'", "href='Home.html'");
-                value = value.replace("href=\"/wiki/spaces/CARGO\"", "href=\"Home.html\"");
+            File page = new File("target/source", toFilename(result.getString("title")));
+            if (value.contains("https://codehaus-cargo.atlassian.net/wiki/pages/resumedraft.action"))
+            {
+                throw new IllegalArgumentException("Page " + result.getString("title") + " contains a draft link");
+            }
+            writeFile(page, value);
+            pages.add(page);
 
-                // Ignore Gravatar images
-                value = value.replaceAll("<img [^>]*src=\"https://secure.gravatar.com/avatar/[^\"]*\"[^>]*>", "");
+            JSONObject entry = new JSONObject();
+            entry.put("version", result.getJSONObject("version").getInt("number"));
+            entry.put("title", result.getString("title"));
+            entry.put("file", page.getPath());
+            entry.put("links", new JSONArray(links));
+            manifest.put(result.getString("id"), entry);
+            journal.completed(url, result.getString("id"), entry);
+        }
+        catch (Throwable t)
+        {
+            exceptions.put(url, t);
+        }
+        return -1;
+    }
 
-                pattern = Pattern.compile("href=\"[^\"]*/wiki/[^\"]+/CARGO/[^\"]+\"|href='[^\']*/wiki/[^\']+/CARGO/[^']+'");
-                matcher = pattern.matcher(value);
-                int start = 0;
-                StringBuilder sb = new StringBuilder();
-                while (matcher.find())
+    /**
+     * Download JSON from Atlassian Confluence.
+     * @param jsonUrl URL of the JSON.
+     * @param kind Kind of download, for the metrics.
+     * @param rawFile File to keep the raw JSON in, <code>null</code> to parse the JSON straight
+     * from the response.
+     * @return JSON.
+     * @throws IOException If the download fails, including while the JSON is being read.
+     * @throws InterruptedException If interrupted while downloading.
+     */
+    private JSONObject getJSON(URL jsonUrl, String kind, File rawFile)
+        throws IOException, InterruptedException
+    {
+        Metrics.Download timer = METRICS.download(kind, jsonUrl.toString());
+        long count = 0;
+        try
+        {
+            JSONObject json;
+            try (CountingInputStream is =
+                new CountingInputStream(transport.get(jsonUrl, retries.authenticate, true)))
+            {
+                try
                 {
-                    sb.append(value.substring(start, matcher.start()));
-                    sb.append("href=\"");
-                    String filename = value.substring(matcher.start() + 6, matcher.end() - 1);
-                    if (filename.startsWith("/wiki/spaces/CARGO/pages/"))
+                    if (rawFile == null)
                     {
-                        String identifier = filename.substring(0, filename.lastIndexOf('/'));
-                        identifier = identifier.substring(identifier.lastIndexOf('/') + 1);
-                        if (identifier.matches("-?\\d+"))
-                        {
-                            boolean found = false;
-                            URL pageUrl =
-                                new URL("https://codehaus-cargo.atlassian.net/wiki/api/v2/pages/" + identifier + "?body-format=view");
-                            synchronized (downloads)
-                            {
-                                found = downloads.contains(pageUrl);
-                                if (!found)
-                                {
-                                    downloads.add(pageUrl);
-                                }
-                            }
-                            if (!found)
-                            {
-                                System.out.println("    => Found new page to handle: " + pageUrl);
-                                WebsiteGenerator runnable = new WebsiteGenerator();
-                                runnable.url = pageUrl;
-                                Thread thread = new Thread(runnable);
-                                CONTENT_DOWNLOADERS.submit(thread);
-                            }
-                        }
-                    }
-                    filename = filename.substring(filename.lastIndexOf('/') + 1);
-                    int hash = filename.indexOf('#');
-                    String anchor = "";
-                    if (hash != -1)
-                    {
-                        anchor = filename.substring(hash);
-                        filename = filename.substring(0, hash);
-                    }
-                    if ("overview".equals(filename))
-                    {
-                        filename = "Home";
-                    }
-                    if (blogpostIdentifiers.containsKey(filename))
-                    {
-                        filename = blogpostIdentifiers.get(filename);
-                    }
-                    filename = filename.replace("%21", "").replace("%2C", "").replace("%3A", "");
-                    sb.append(filename);
-                    sb.append(".html");
-                    sb.append(anchor);
-                    sb.append("\"");
-                    start = matcher.end();
-                }
-                sb.append(value.substring(start));
-                value = sb.toString();
-
-                pattern = Pattern.compile(
-                    "href=\"(https://codehaus-cargo.atlassian.net)?/wiki/download/attachments/(\\d+/)?[^\"]+\"|"
-                    + "href='(https://codehaus-cargo.atlassian.net)?/wiki/download/attachments/(\\d+/)?[^']+'");
-                matcher = pattern.matcher(value);
-                start = 0;
-                sb = new StringBuilder();
-                while (matcher.find())
-                {
-                    sb.append(value.substring(start, matcher.start()));
-                    sb.append("href=\"attachments");
-                    String attachment = value.substring(matcher.start() + 6, matcher.end() - 1);
-                    if (attachment.startsWith("/"))
-                    {
-                        attachment = "https://codehaus-cargo.atlassian.net" + attachment;
-                    }
-                    if (DOWNLOAD_ATTACHMENTS)
-                    {
-                        URL attachmentUrl = new URL(attachment);
-                        synchronized (downloads)
-                        {
-                            if (!downloads.contains(attachmentUrl))
-                            {
-                                downloads.add(attachmentUrl);
-                                WebsiteGenerator runnable = new WebsiteGenerator();
-                                runnable.url = attachmentUrl;
-                                Thread thread = new Thread(runnable);
-                                CONTENT_DOWNLOADERS.submit(thread);
-                            }
-                        }
-                    }
-                    int questionMark = attachment.lastIndexOf('?');
-                    if (questionMark != -1)
-                    {
-                        sb.append(attachment.substring(attachment.lastIndexOf('/'), questionMark));
+                        json = new JSONObject(
+                            new JSONTokener(new InputStreamReader(is, StandardCharsets.UTF_8)));
                     }
                     else
                     {
-                        sb.append(attachment.substring(attachment.lastIndexOf('/')));
-                    }
-                    sb.append("\"");
-                    start = matcher.end();
-                }
-                sb.append(value.substring(start));
-                value = sb.toString();
-
-                pattern = Pattern.compile("href=\"\\s*/wiki/[^\"]+\"|href='\\s*/wiki/[^']+'");
-                matcher = pattern.matcher(value);
-                start = 0;
-                sb = new StringBuilder();
-                while (matcher.find())
-                {
-                    sb.append(value.substring(start, matcher.start()));
-                    sb.append("href=\"https://codehaus-cargo.atlassian.net");
-                    sb.append(value.substring(matcher.start() + 6, matcher.end() - 1).trim());
-                    sb.append("\"");
-                    start = matcher.end();
-                }
-                sb.append(value.substring(start));
-                value = sb.toString();
-
-                pattern = Pattern.compile("src=\"[^\"]+\"|src='[^']+'");
-                matcher = pattern.matcher(value);
-                start = 0;
-                sb = new StringBuilder();
-                while (matcher.find())
-                {
-                    sb.append(value.substring(start, matcher.start()));
-                    sb.append("src=\"");
-                    String attachment = value.substring(matcher.start() + 5, matcher.end() - 1);
-                    if (!attachment.startsWith("https://codehaus-cargo.semaphoreci.com")
-                        && !attachment.startsWith("https://codehaus-cargo.atlassian.net/wiki/download/thumbnails"))
-                    {
-                        sb.append("attachments/");
-                        attachment = attachment.replace("&amp;", "&");
-                        if ("http://www.codehaus.org/newtest.gif".equals(attachment))
-                        {
-                            attachment = "blank.gif";
-                        }
-                        else if (attachment.startsWith("/"))
-                        {
-                            attachment = "https://codehaus-cargo.atlassian.net" + attachment;
-                        }
-                        int questionMark = attachment.indexOf('?');
-                        if (questionMark != -1)
-                        {
-                            attachment = attachment.substring(0, questionMark);
-                        }
-                        if (attachment.endsWith("default.png"))
-                        {
-                            attachment = "blank.gif";
-                        }
-                        if (!attachment.endsWith("blank.gif"))
+                        try (FileOutputStream fos = new FileOutputStream(rawFile))
                         {
-                            URL attachmentUrl = new URL(attachment);
-                            synchronized (downloads)
+                            byte[] buffer = new byte[8 * 1024];
+                            int bytesRead;
+                            while ((bytesRead = is.read(buffer)) != -1)
                             {
-                                if (!downloads.contains(attachmentUrl))
-                                {
-                                    downloads.add(attachmentUrl);
-                                    WebsiteGenerator runnable = new WebsiteGenerator();
-                                    runnable.url = attachmentUrl;
-                                    Thread thread = new Thread(runnable);
-                                    CONTENT_DOWNLOADERS.submit(thread);
-                                }
+                                fos.write(buffer, 0, bytesRead);
                             }
                         }
-                        attachment = attachment.substring(attachment.lastIndexOf('/') + 1);
+                        json = new JSONObject(readFile(rawFile));
                     }
-                    sb.append(attachment);
-                    sb.append("\"");
-                    start = matcher.end();
                 }
-                sb.append(value.substring(start));
-                value = sb.toString();
+                finally
+                {
+                    count = is.getCount();
+                }
+            }
+            timer.end(count, 200);
+            return json;
+        }
+        catch (HostBusyException e)
+        {
+            // Not a download, the request has not been sent
+            throw e;
+        }
+        catch (IOException e)
+        {
+            timer.end(count, statusCode(e));
+            throw e;
+        }
+        catch (JSONException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                // The connection failed while the JSON was being read
+                timer.end(count, statusCode(e.getCause()));
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retry state of a download, deciding when to retry it.
+     */
+    private static class RetryState
+    {
+        /**
+         * Number of failed download attempts so far, not counting the throttled ones.
+         */
+        private int attempts;
+
+        /**
+         * Number of throttled download attempts so far.
+         */
+        private int throttledAttempts;
 
-                File page = new File("target/source", toFilename(result.getString("title")));
-                if (value.contains("https://codehaus-cargo.atlassian.net/wiki/pages/resumedraft.action"))
+        /**
+         * Whether to send the authorization header when downloading.
+         */
+        private boolean authenticate = true;
+
+        /**
+         * Decide when to retry a failed download, based on the HTTP status code (if any).
+         * @param e Exception with which the download has failed.
+         * @return Delay in milliseconds after which the download should be retried.
+         * @throws IllegalStateException If the download should not be retried.
+         */
+        long retryDelay(IOException e)
+        {
+            if (e instanceof HostBusyException)
+            {
+                // The request has not been sent, so this is not an attempt
+                METRICS.increment("download.hostBusy");
+                return ((HostBusyException) e).getDelay();
+            }
+            int statusCode = statusCode(e);
+            if (statusCode == 401)
+            {
+                METRICS.increment("download.unauthorized");
+                if (authenticate)
+                {
+                    authenticate = false;
+                    return 0;
+                }
+                // 401 won't fix itself by retrying
+                throw new IllegalStateException("Got error 401 after " + attempts + " retries", e);
+            }
+            if (e instanceof HttpStatusException && ((HttpStatusException) e).isThrottled())
+            {
+                METRICS.increment("download.throttled");
+                throttledAttempts++;
+                if (throttledAttempts > WebsiteGenerator.NUMBER_THROTTLED_RETRIES)
+                {
+                    throw new IllegalStateException(
+                        "Still throttled after " + (throttledAttempts - 1) + " retries", e);
+                }
+                long retryAfter = ((HttpStatusException) e).getRetryAfter();
+                if (retryAfter >= 0)
                 {
-                    throw new IllegalArgumentException("Page " + result.getString("title") + " contains a draft link");
+                    return retryAfter;
                 }
-                writeFile(page, value);
-                pages.add(page);
+                long backoff = Math.min(
+                    WebsiteGenerator.MAXIMUM_THROTTLED_DELAY, 1000L << throttledAttempts);
+                return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2);
+            }
+            if (statusCode >= 400 && statusCode < 500 && statusCode != 408)
+            {
+                // Client errors other than timeouts won't fix themselves by retrying either
+                throw new IllegalStateException("Got error " + statusCode, e);
+            }
+            attempts++;
+            if (attempts >= WebsiteGenerator.NUMBER_RETRIES)
+            {
+                throw new IllegalStateException("Failed after " + (attempts - 1) + " retries", e);
             }
+            METRICS.increment("download.retries");
+            return ThreadLocalRandom.current().nextInt(5000, 15000);
         }
-        catch (Throwable t)
+    }
+
+    /**
+     * Get the HTTP status code with which a download has failed.
+     * @param e Exception with which the download has failed.
+     * @return HTTP status code, <code>-1</code> if the download has failed without any.
+     */
+    private static int statusCode(Throwable e)
+    {
+        if (e instanceof HttpStatusException)
         {
-            exceptions.put(url, t);
+            return ((HttpStatusException) e).getStatusCode();
+        }
+        return -1;
+    }
+
+    /**
+     * Input stream which counts the downloaded bytes, to calculate the download speed and size.
+     */
+    private static class CountingInputStream extends FilterInputStream
+    {
+        /**
+         * Number of bytes read from this stream.
+         */
+        private long count = 0;
+
+        /**
+         * Saves the attributes.
+         * @param in Input stream to count the bytes of.
+         */
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        /**
+         * @return Number of bytes read from this stream.
+         */
+        long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            int read = super.read();
+            if (read != -1)
+            {
+                count(1);
+            }
+            return read;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            if (read > 0)
+            {
+                count(read);
+            }
+            return read;
+        }
+
+        /**
+         * Count downloaded bytes.
+         * @param bytes Number of bytes downloaded.
+         */
+        private void count(long bytes)
+        {
+            count += bytes;
+            METRICS.add("download.bytes", bytes);
         }
     }
 }
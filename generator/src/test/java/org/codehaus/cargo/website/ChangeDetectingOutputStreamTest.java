@@ -0,0 +1,72 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChangeDetectingOutputStreamTest
+{
+    @TempDir
+    File directory;
+
+    private boolean write(File file, String content) throws Exception
+    {
+        ChangeDetectingOutputStream output = new ChangeDetectingOutputStream(file);
+        try (ChangeDetectingOutputStream stream = output)
+        {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            // Write in small chunks, so the content differs in the middle of a chunk
+            for (int i = 0; i < bytes.length; i += 3)
+            {
+                stream.write(bytes, i, Math.min(3, bytes.length - i));
+            }
+        }
+        assertEquals(content,
+            new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(1, directory.list().length);
+        return output.isChanged();
+    }
+
+    @Test
+    public void onlyWriteChanges() throws Exception
+    {
+        File file = new File(directory, "page.html");
+        assertTrue(write(file, "<p>Hello</p>"));
+        assertTrue(file.setLastModified(1000000));
+
+        assertFalse(write(file, "<p>Hello</p>"));
+        assertEquals(1000000, file.lastModified());
+
+        assertTrue(write(file, "<p>Hello world</p>"));
+        assertTrue(write(file, "<p>Hello</p>"));
+        assertTrue(write(file, "<p>Hello</p>\r\n"));
+        assertTrue(write(file, ""));
+        assertFalse(write(file, ""));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class CrawlFrontierTest
+{
+    private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+    private CrawlFrontier.Task task(final String name, final CountDownLatch await,
+        final CountDownLatch countDown)
+    {
+        return task(name, null, await, countDown);
+    }
+
+    private CrawlFrontier.Task task(final String name, final CountDownLatch isStarted,
+        final CountDownLatch await, final CountDownLatch countDown)
+    {
+        return new CrawlFrontier.Task()
+        {
+            @Override
+            public long execute()
+            {
+                started.add(name);
+                if (isStarted != null)
+                {
+                    isStarted.countDown();
+                }
+                try
+                {
+                    if (await != null)
+                    {
+                        await.await(10, TimeUnit.SECONDS);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                if (countDown != null)
+                {
+                    countDown.countDown();
+                }
+                return -1;
+            }
+        };
+    }
+
+    @Test
+    public void pagesFirstThenSmallestAttachmentsFirst() throws Exception
+    {
+        ExecutorService executor = CrawlFrontier.createExecutor(false, 1);
+        CrawlFrontier frontier = new CrawlFrontier(executor, 1, 1, (completed, submitted) -> { });
+        CountDownLatch release = new CountDownLatch(1);
+        frontier.submit(task("Home", release, null), CrawlFrontier.Lane.PAGE, 0);
+        frontier.submit(task("cargo.zip", null, null), CrawlFrontier.Lane.ATTACHMENT, 3000000);
+        frontier.submit(task("logo.png", null, null), CrawlFrontier.Lane.ATTACHMENT, 10000);
+        frontier.submit(task("News", null, null), CrawlFrontier.Lane.PAGE, 0);
+        frontier.submit(task("guide.pdf", null, null), CrawlFrontier.Lane.ATTACHMENT, 200000);
+        frontier.submit(task("Download", null, null), CrawlFrontier.Lane.PAGE, 0);
+        release.countDown();
+        frontier.await();
+        executor.shutdown();
+
+        assertEquals(Arrays.asList(
+            "Home", "News", "Download", "logo.png", "guide.pdf", "cargo.zip"), started);
+        assertEquals(6, frontier.getCompleted());
+    }
+
+    @Test
+    public void attachmentsLeaveConcurrencyToPages() throws Exception
+    {
+        ExecutorService executor = CrawlFrontier.createExecutor(false, 2);
+        CrawlFrontier frontier = new CrawlFrontier(executor, 2, 1, (completed, submitted) -> { });
+        CountDownLatch attachmentStarted = new CountDownLatch(1);
+        CountDownLatch pageDone = new CountDownLatch(1);
+        frontier.submit(task("cargo-1.zip", attachmentStarted, pageDone, null),
+            CrawlFrontier.Lane.ATTACHMENT, 3000);
+        frontier.submit(task("cargo-2.zip", null, null), CrawlFrontier.Lane.ATTACHMENT, 3000);
+        // Otherwise, both pool threads could start cargo-1.zip and Home in any order
+        attachmentStarted.await(10, TimeUnit.SECONDS);
+        frontier.submit(task("Home", null, pageDone), CrawlFrontier.Lane.PAGE, 0);
+        frontier.await();
+        executor.shutdown();
+
+        assertEquals(Arrays.asList("cargo-1.zip", "Home", "cargo-2.zip"), started);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+public class DocumentTransformerTest
+{
+    @Test
+    public void rulesInOneTraversal()
+    {
+        final List<String> visited = new ArrayList<String>();
+        DocumentTransformer transformer = DocumentTransformer.builder()
+            .rule(new DocumentTransformer.Rule()
+            {
+                @Override
+                public boolean apply(Element element)
+                {
+                    return element.hasClass("remove");
+                }
+            })
+            .rule(new DocumentTransformer.Rule()
+            {
+                @Override
+                public boolean apply(Element element)
+                {
+                    visited.add(element.normalName());
+                    if ("code".equals(element.normalName()))
+                    {
+                        element.empty();
+                        element.appendElement("i").appendText("x");
+                    }
+                    return false;
+                }
+            })
+            .build();
+
+        Document document = Jsoup.parse(
+            "<p class=\"remove\"><b>a</b></p><p><code>b</code><span class=\"remove\">c</span></p>");
+        transformer.transform(document.body());
+        assertEquals("<p><code><i>x</i></code></p>", document.body().html().replace("\n", ""));
+        assertEquals("[body, p, code, i]", visited.toString());
+    }
+
+    @Test
+    public void wordBreaksInTableCode()
+    {
+        Document document = Jsoup.parse("<table class=\"confluenceTable\"><tr><td>"
+            + "<code>a.b=c(d)...e.*</code><code>&lt;a&gt;x&lt;/a&gt;</code>"
+            + "<code>a.<b>b</b></code></td></tr></table>"
+            + "<code>a.b</code>");
+        WebsiteGenerator.DOCUMENT_TRANSFORMER.transform(document.body());
+        assertEquals("<code>a.<wbr>b=<wbr>c<wbr>(d)...e.</code>",
+            document.select("code").get(0).outerHtml());
+        // The trailing word break is removed when the page is serialized
+        assertEquals("<code>&lt;a&gt;<wbr>x<wbr>&lt;/a&gt;<wbr></code>",
+            document.select("code").get(1).outerHtml());
+        assertEquals("<code>a.<b>b</b></code>",
+            document.select("code").get(2).outerHtml().replace("\n", ""));
+        assertEquals("<code>a.b</code>", document.select("code").get(3).outerHtml());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DownloadJournalTest
+{
+    @TempDir
+    File directory;
+
+    @Test
+    public void resumeFailedDownload() throws Exception
+    {
+        File file = new File(directory, "journal.jsonl");
+        File home = new File(directory, "Home");
+        File logo = new File(directory, "logo.png");
+        Files.write(home.toPath(), new byte[0]);
+        Files.write(logo.toPath(), new byte[0]);
+        URL homeUrl = new URL("https://example.com/wiki/api/v2/pages/1?body-format=view");
+        URL logoUrl = new URL("https://example.com/wiki/download/attachments/1/logo.png");
+        URL newsUrl = new URL("https://example.com/wiki/api/v2/pages/2?body-format=view");
+
+        DownloadJournal journal = new DownloadJournal(file);
+        assertFalse(journal.isResumed());
+        journal.discovered(logoUrl);
+        journal.discovered(newsUrl);
+        journal.discovered(newsUrl);
+        journal.completed(homeUrl, "1", new JSONObject().put("version", 3).put("file",
+            home.getPath()));
+        journal.completed(logoUrl, logo);
+        journal.close();
+        // A crash while writing a record
+        Files.write(file.toPath(), "{\"discovered\":".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+
+        journal = new DownloadJournal(file);
+        assertTrue(journal.isResumed());
+        assertTrue(journal.isCompleted(homeUrl));
+        assertTrue(journal.isCompleted(logoUrl));
+        assertFalse(journal.isCompleted(newsUrl));
+        assertEquals(Collections.singleton(newsUrl), journal.getPending());
+        assertEquals(3, journal.getPages().get("1").getInt("version"));
+        journal.completed(newsUrl, "2", new JSONObject().put("version", 1).put("file",
+            new File(directory, "News").getPath()));
+        journal.close();
+
+        journal = new DownloadJournal(file);
+        assertTrue(journal.getPending().isEmpty());
+        // The output file of the page is gone
+        assertFalse(journal.isCompleted(newsUrl));
+        journal.delete();
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LinkRewriterTest
+{
+    @Test
+    public void handlersByAttributeAndPriority() throws Exception
+    {
+        final List<String> seen = new ArrayList<String>();
+        LinkRewriter rewriter = LinkRewriter.builder()
+            .handler("href", new LinkRewriter.Handler()
+            {
+                @Override
+                public String rewrite(String value)
+                {
+                    seen.add(value);
+                    return value.startsWith("/wiki/") ? value.substring(6) + ".html" : null;
+                }
+            })
+            .handler("href", new LinkRewriter.Handler()
+            {
+                @Override
+                public String rewrite(String value)
+                {
+                    return value.startsWith("http:") ? "https:" + value.substring(5) : null;
+                }
+            })
+            .handler("src", new LinkRewriter.Handler()
+            {
+                @Override
+                public String rewrite(String value)
+                {
+                    return "attachments/" + value.substring(value.lastIndexOf('/') + 1);
+                }
+            })
+            .build();
+
+        assertEquals("<a href=\"Home.html\">x</a><img src=\"attachments/a.png\"/>"
+            + "<a href=\"https://cargo\">y</a><a href=\"#top\">z</a>"
+            + "<img data-src=\"attachments/b\"/>",
+            rewriter.rewrite("<a href='/wiki/Home'>x</a><img src=\"/dl/a.png\"/>"
+                + "<a href=\"http://cargo\">y</a><a href=\"#top\">z</a><img data-src='c/b'/>"));
+        assertEquals("[/wiki/Home, http://cargo, #top]", seen.toString());
+    }
+
+    @Test
+    public void valuesWhichAreNotRewritten() throws Exception
+    {
+        LinkRewriter rewriter = LinkRewriter.builder()
+            .handler("src", new LinkRewriter.Handler()
+            {
+                @Override
+                public String rewrite(String value)
+                {
+                    return "x";
+                }
+            })
+            .build();
+
+        String input = "src= src=\"\" src=x src='a\"b src=";
+        assertSame(input, rewriter.rewrite(input));
+        assertEquals("src=\"x\" src=\"x\"", rewriter.rewrite("src='a\"b' src=\"c'd\""));
+    }
+}
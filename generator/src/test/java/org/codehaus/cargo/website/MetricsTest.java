@@ -0,0 +1,92 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest
+{
+    @Test
+    public void countConcurrently() throws Exception
+    {
+        final Metrics metrics = new Metrics();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++)
+        {
+            executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 10000; j++)
+                    {
+                        metrics.add("download.bytes", 3);
+                        metrics.increment("download.retries");
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(240000, metrics.get("download.bytes"));
+        assertEquals(80000, metrics.get("download.retries"));
+        assertEquals(0, metrics.get("download.throttled"));
+    }
+
+    @Test
+    public void histograms()
+    {
+        Metrics metrics = new Metrics();
+        for (int i = 0; i < 9; i++)
+        {
+            metrics.record("render.parse", TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        metrics.record("render.parse", TimeUnit.MILLISECONDS.toNanos(70000));
+        metrics.download("page", "https://example.com/slow").end(10, 200);
+        metrics.stage("write", "Home").end();
+
+        JSONObject json = metrics.toJSON();
+        JSONObject parse = json.getJSONObject("histograms").getJSONObject("render.parse");
+        assertEquals(10, parse.getLong("count"));
+        assertEquals(70027, parse.getLong("totalMillis"));
+        assertEquals(70000, parse.getLong("maxMillis"));
+        assertEquals(5, parse.getLong("p50Millis"));
+        assertEquals(70000, parse.getLong("p99Millis"));
+        JSONArray buckets = parse.getJSONArray("buckets");
+        assertEquals(2, buckets.length());
+        assertEquals(5, buckets.getJSONObject(0).getLong("upToMillis"));
+        assertEquals(9, buckets.getJSONObject(0).getLong("count"));
+        assertEquals(1, buckets.getJSONObject(1).getLong("count"));
+        assertEquals(1, json.getJSONObject("histograms").getJSONObject("render.write")
+            .getLong("count"));
+        assertEquals(1, json.getJSONObject("counters").getLong("download.page.status.200"));
+        assertEquals("https://example.com/slow",
+            json.getJSONArray("slowestDownloads").getJSONObject(0).getString("url"));
+    }
+}
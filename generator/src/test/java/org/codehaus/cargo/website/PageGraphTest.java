@@ -0,0 +1,114 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class PageGraphTest
+{
+    @Test
+    public void ancestors()
+    {
+        PageGraph graph = new PageGraph();
+        graph.addPage("3", "Tomcat 9.x", "Tomcat+9.x", "2");
+        graph.addPage("1", "Home", "Home", null);
+        graph.addPage("2", "Containers", "Containers", "1");
+        graph.addPage("4", "Orphan", "Orphan", "404");
+        assertThrows(IllegalStateException.class, () -> graph.getAncestors("Home"));
+        graph.calculateAncestors();
+
+        List<PageGraph.Page> ancestors = graph.getAncestors("Tomcat+9.x");
+        assertEquals(2, ancestors.size());
+        assertEquals("Home", ancestors.get(0).getTitle());
+        assertEquals("Containers", ancestors.get(1).getFilename());
+        assertSame(ancestors.subList(0, 1).get(0), graph.getAncestors("Containers").get(0));
+        assertTrue(graph.getAncestors("Home").isEmpty());
+        assertTrue(graph.getAncestors("Orphan").isEmpty());
+        assertTrue(graph.getAncestors("Search").isEmpty());
+        assertTrue(graph.getCycles().isEmpty());
+    }
+
+    @Test
+    public void cycles()
+    {
+        PageGraph graph = new PageGraph();
+        graph.addPage("1", "A", "A", "3");
+        graph.addPage("2", "B", "B", "1");
+        graph.addPage("3", "C", "C", "2");
+        graph.addPage("4", "D", "D", "3");
+        graph.calculateAncestors();
+
+        // The cycle is cut from the page with the lowest identifier, whatever is looked up first
+        assertEquals(Arrays.asList("B", "C"), titles(graph.getAncestors("D")));
+        assertEquals(Collections.singletonList(Arrays.asList("A", "C", "B")), graph.getCycles());
+        assertEquals(Collections.singletonList("B"), titles(graph.getAncestors("C")));
+        assertEquals(Arrays.asList("B", "C"), titles(graph.getAncestors("A")));
+        assertTrue(graph.getAncestors("B").isEmpty());
+        assertEquals(1, graph.getCycles().size());
+
+        PageGraph reordered = new PageGraph();
+        reordered.addPage("4", "D", "D", "3");
+        reordered.addPage("3", "C", "C", "2");
+        reordered.addPage("2", "B", "B", "1");
+        reordered.addPage("1", "A", "A", "3");
+        reordered.calculateAncestors();
+        assertEquals(Arrays.asList("B", "C"), titles(reordered.getAncestors("D")));
+        assertEquals(graph.getCycles(), reordered.getCycles());
+    }
+
+    @Test
+    public void links()
+    {
+        PageGraph graph = new PageGraph();
+        graph.addLinks("Home", Arrays.asList("Containers", "Home"));
+        graph.addLinks("Containers", Arrays.asList("Home", "Tomcat+9.x", "Missing"));
+        graph.addLinks("Containers", Collections.singletonList("Missing+too"));
+        Set<String> existing =
+            new HashSet<String>(Arrays.asList("Home", "Containers", "Tomcat+9.x", "News"));
+
+        assertEquals(Collections.singletonMap("Containers",
+            new HashSet<String>(Arrays.asList("Missing", "Missing+too"))),
+            graph.getBrokenLinks(existing));
+        assertEquals(Collections.singleton("News"), graph.getOrphans(existing));
+        assertEquals(new HashSet<String>(Arrays.asList("Home", "Containers")),
+            graph.getInboundLinks().get("Home"));
+    }
+
+    private static List<String> titles(List<PageGraph.Page> pages)
+    {
+        String[] titles = new String[pages.size()];
+        for (int i = 0; i < titles.length; i++)
+        {
+            titles[i] = pages.get(i).getTitle();
+        }
+        return Arrays.asList(titles);
+    }
+}
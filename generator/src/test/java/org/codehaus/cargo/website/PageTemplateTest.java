@@ -0,0 +1,53 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class PageTemplateTest
+{
+    @Test
+    public void renderPlaceholders() throws Exception
+    {
+        PageTemplate template = new PageTemplate(
+            "<title>$title</title><p class=\"x\">$breadcrumbs$title</p>$value$unknown",
+            RewriteEngine.builder().literal(" class=\"x\"", "").build());
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("title", "Home");
+        values.put("breadcrumbs", "");
+        values.put("value", "<b class=\"x\">$title</b>");
+
+        Reader reader = template.render(values);
+        StringBuilder rendered = new StringBuilder();
+        char[] buffer = new char[3];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) != -1)
+        {
+            rendered.append(buffer, 0, read);
+        }
+        assertEquals("<title>Home</title><p>Home</p><b>$title</b>$unknown", rendered.toString());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RenderCacheTest
+{
+    @TempDir
+    File directory;
+
+    @Test
+    public void renderOnlyChangedPages() throws Exception
+    {
+        File file = new File(directory, "render-cache.json");
+        File home = new File(directory, "Home.html");
+        File news = new File(directory, "News.html");
+        Files.write(home.toPath(), new byte[0]);
+
+        RenderCache cache = new RenderCache(file, "1", "template");
+        assertNotEquals(cache.key("ab", "c"), cache.key("a", "bc"));
+        assertFalse(cache.isCached("Home", cache.key("Home", "source"), home));
+        assertFalse(cache.isCached("News", cache.key("News", "source"), news));
+        cache.save();
+
+        cache = new RenderCache(file, "1", "template");
+        assertTrue(cache.isCached("Home", cache.key("Home", "source"), home));
+        assertFalse(cache.isCached("News", cache.key("News", "source"), news));
+        cache.save();
+
+        RenderCache rules = new RenderCache(file, "2", "template");
+        assertFalse(rules.isCached("Home", rules.key("Home", "source"), home));
+
+        cache = new RenderCache(file, "1", "template");
+        assertFalse(cache.isCached("Home", cache.key("Home", "changed"), home));
+    }
+}
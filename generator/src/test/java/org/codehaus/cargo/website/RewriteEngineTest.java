@@ -0,0 +1,94 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class RewriteEngineTest
+{
+    @Test
+    public void literalsAndRegularExpressionsInOneStage()
+    {
+        String input = "<p  data-a=\"1\" class=\"external-link\">x</p>\n <p data-b=\"2\">y</p>";
+        RewriteEngine engine = RewriteEngine.builder()
+            .regex("\\s*data-[^=\\s]+=\"[^\"]+\"", "")
+            .literal(" class=\"external-link\"", "")
+            .build();
+        assertEquals(input.replaceAll("\\s*data-[^=\\s]+=\"[^\"]+\"", "")
+            .replace(" class=\"external-link\"", ""), engine.rewrite(input));
+    }
+
+    @Test
+    public void mandatoryWhitespacePrefix()
+    {
+        String input = "<b class=\"c\"> <i  class=\"c\"><u\tclass=\"c\">";
+        RewriteEngine engine = RewriteEngine.builder().regex("\\s+class=\"c\"", "").build();
+        assertEquals(input.replaceAll("\\s+class=\"c\"", ""), engine.rewrite(input));
+        assertEquals("class=\"c\"", engine.rewrite("class=\"c\""));
+    }
+
+    @Test
+    public void groupReferences()
+    {
+        RewriteEngine engine = RewriteEngine.builder()
+            .regex("(<\\w+)\\s+local-id=\"\\w+\"", "$1")
+            .regex("\\s*id=\"(\\d+)\"", "[$0|$1|\\$1]")
+            .build();
+        assertEquals("<p>a<b>b[ id=\"7\"|7|$1]",
+            engine.rewrite("<p local-id=\"x1\">a<b local-id=\"y2\">b id=\"7\""));
+    }
+
+    @Test
+    public void emptyMatches()
+    {
+        assertEquals("abc".replaceAll("x*", "-"),
+            RewriteEngine.builder().regex("x*", "-").build().rewrite("abc"));
+        assertEquals("axc".replaceAll("x*", "-"),
+            RewriteEngine.builder().regex("x*", "-").build().rewrite("axc"));
+    }
+
+    @Test
+    public void firstRuleWinsOnSamePosition()
+    {
+        RewriteEngine engine = RewriteEngine.builder()
+            .literal("abc", "1")
+            .literal("ab", "2")
+            .literal("b", "3")
+            .build();
+        assertEquals("1 2 3", engine.rewrite("abc ab b"));
+    }
+
+    @Test
+    public void laterStagesSeeEarlierResults()
+    {
+        String input = "<p> </p>x<p>&nbsp; <a>";
+        RewriteEngine engine = RewriteEngine.builder()
+            .literal("&nbsp; <a", "<a")
+            .stage()
+            .regex("\\s*<p>\\s*</p>", "")
+            .stage()
+            .literal("x<p><a", "<p><a")
+            .build();
+        assertEquals("<p><a>", engine.rewrite(input));
+        assertEquals(input, RewriteEngine.builder().build().rewrite(input));
+    }
+}
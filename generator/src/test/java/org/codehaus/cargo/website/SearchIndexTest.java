@@ -0,0 +1,92 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus Cargo, copyright 2004-2011 Vincent Massol, 2012-2026 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.website;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SearchIndexTest
+{
+    @TempDir
+    File directory;
+
+    @Test
+    public void terms()
+    {
+        assertEquals(Arrays.asList("tomcat", "9", "x", "déploiement", "cargo", "servlet", "port"),
+            SearchIndex.terms("Tomcat 9.x: Déploiement (cargo.servlet.port)"));
+    }
+
+    @Test
+    public void writeShards() throws Exception
+    {
+        SearchIndex index = new SearchIndex(directory);
+        index.addPage("Tomcat+9.x", "Tomcat 9.x", "Tomcat 9.x support, Tomcat <b>");
+        index.addPage("Home", "Home", "Welcome to Codehaus Cargo");
+        assertEquals(9, index.write());
+
+        JSONArray pages = new JSONArray(read("pages.json"));
+        assertEquals("Home", pages.getJSONArray(0).getString(0));
+        assertEquals("Tomcat 9.x support, Tomcat <b>", pages.getJSONArray(1).getString(2));
+        JSONObject t = new JSONObject(read("t.json"));
+        assertEquals("[1,3]", t.getJSONArray("tomcat").toString());
+        assertEquals("[0,1]", t.getJSONArray("to").toString());
+        assertEquals("[1,2]", new JSONObject(read("9.json")).getJSONArray("9").toString());
+    }
+
+    @Test
+    public void keepPreviousPages() throws Exception
+    {
+        SearchIndex index = new SearchIndex(directory);
+        index.addPage("Tomcat+9.x", "Tomcat 9.x", "Tomcat 9.x support");
+        index.addPage("Home", "Home", "Welcome to Codehaus Cargo");
+        index.write();
+
+        index = new SearchIndex(directory);
+        assertTrue(index.keepPage("Tomcat+9.x"));
+        assertTrue(index.keepPage("Home"));
+        assertFalse(index.keepPage("News"));
+        assertEquals(0, index.write());
+
+        index = new SearchIndex(directory);
+        assertTrue(index.keepPage("Tomcat+9.x"));
+        index.addPage("Home", "Home", "Welcome");
+        assertEquals(3, index.write());
+        assertEquals("{\"tomcat\":[1,2]}", read("t.json"));
+        assertFalse(new File(directory, "c.json").exists());
+    }
+
+    private String read(String name) throws Exception
+    {
+        return new String(Files.readAllBytes(new File(directory, name).toPath()),
+            StandardCharsets.UTF_8);
+    }
+}